@@ -16,10 +16,12 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Build;
 
+import com.unity3d.ads.android.cache.IUnityAdsPrefetchPolicy;
 import com.unity3d.ads.android.cache.UnityAdsCache;
 import com.unity3d.ads.android.campaign.UnityAdsCampaign;
 import com.unity3d.ads.android.data.UnityAdsAdvertisingId;
 import com.unity3d.ads.android.data.UnityAdsDevice;
+import com.unity3d.ads.android.data.UnityAdsShowPredictor;
 import com.unity3d.ads.android.item.UnityAdsRewardItem;
 import com.unity3d.ads.android.item.UnityAdsRewardItemManager;
 import com.unity3d.ads.android.properties.UnityAdsConstants;
@@ -76,6 +78,14 @@ public class UnityAds implements IUnityAdsWebDataListener {
 		UnityAdsProperties.TESTMODE_ENABLED = testModeEnabled;
 	}
 
+	public static void setCacheSizeBudget(long bytes) {
+		UnityAdsProperties.CACHE_SIZE_BUDGET = bytes;
+	}
+
+	public static void setPrefetchPolicy(IUnityAdsPrefetchPolicy policy) {
+		UnityAdsCache.setPrefetchPolicy(policy);
+	}
+
 	public static void setTestDeveloperId(String testDeveloperId) {
 		UnityAdsProperties.TEST_DEVELOPER_ID = testDeveloperId;
 	}
@@ -172,8 +182,6 @@ public class UnityAds implements IUnityAdsWebDataListener {
 			UnityAdsZone currentZone = UnityAdsWebData.getZoneManager().getCurrentZone();
 
 			if (currentZone != null) {
-				UnityAdsCache.stopAllDownloads();
-
 				currentZone.mergeOptions(options);
 
 				if (currentZone.noOfferScreen()) {
@@ -186,6 +194,7 @@ public class UnityAds implements IUnityAdsWebDataListener {
 
 				UnityAdsDeviceLog.info("Launching ad from \"" + currentZone.getZoneName() + "\", options: " + currentZone.getZoneOptions().toString());
 				UnityAdsProperties.SELECTED_CAMPAIGN_CACHED = false;
+				UnityAdsShowPredictor.showStarted();
 				startFullscreenActivity();
 				return true;
 			} else {
@@ -528,6 +537,7 @@ public class UnityAds implements IUnityAdsWebDataListener {
 		UnityAdsProperties.BASE_ACTIVITY = new WeakReference<>(activity);
 		UnityAdsProperties.APPLICATION_CONTEXT = activity.getApplicationContext();
 		UnityAdsProperties.CURRENT_ACTIVITY = new WeakReference<>(activity);
+		UnityAdsShowPredictor.sessionStarted();
 
 		UnityAdsDeviceLog.debug("Is debuggable=" + UnityAdsUtils.isDebuggable());
 
@@ -535,6 +545,8 @@ public class UnityAds implements IUnityAdsWebDataListener {
 
 		new Thread(new Runnable() {
 			public void run() {
+				// Continue downloads of last session while ad plan is being fetched
+				UnityAdsCache.restoreDownloads();
 				UnityAdsAdvertisingId.init(activity);
 				if (UnityAdsWebData.initCampaigns()) {
 					_initialized = true;
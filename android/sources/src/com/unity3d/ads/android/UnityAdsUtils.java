@@ -2,9 +2,12 @@ package com.unity3d.ads.android;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
@@ -21,6 +24,7 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.Signature;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Environment;
 import android.os.Handler;
@@ -32,6 +36,8 @@ import com.unity3d.ads.android.properties.UnityAdsProperties;
 public class UnityAdsUtils {
 
 	private static final X500Principal DEBUG_DN = new X500Principal("CN=Android Debug,O=Android,C=US");
+	private static final int READ_CHUNK_SIZE = 8192;
+	private static final int MAX_PRESIZED_READ_LENGTH = 4 * 1024 * 1024;
 
 	@SuppressLint("PackageManagerGetSignatures")
 	public static boolean isDebuggable() {
@@ -166,6 +172,29 @@ public class UnityAdsUtils {
 		return true;
 	}
 
+	/**
+	 * Reads stream to the end in chunks
+	 * @param contentLength Expected length from Content-Length, output is presized with it when it is known
+	 * @param task Task that is checked for cancellation after every chunk, can be null
+	 * @return Bytes read or null if task was cancelled
+	 */
+	public static byte[] readStream (InputStream input, int contentLength, AsyncTask<?, ?, ?> task) throws IOException {
+		// Wrong or hostile Content-Length must not make us allocate huge buffers up front
+		int initialSize = contentLength > 0 ? Math.min(contentLength, MAX_PRESIZED_READ_LENGTH) : READ_CHUNK_SIZE;
+		ByteArrayOutputStream output = new ByteArrayOutputStream(initialSize);
+		byte[] chunk = new byte[READ_CHUNK_SIZE];
+		int count;
+
+		while ((count = input.read(chunk)) != -1) {
+			output.write(chunk, 0, count);
+
+			if (task != null && task.isCancelled())
+				return null;
+		}
+
+		return output.toByteArray();
+	}
+
 	public static boolean canUseExternalStorage () {
 		String state = Environment.getExternalStorageState();
 		return state.equals(Environment.MEDIA_MOUNTED);
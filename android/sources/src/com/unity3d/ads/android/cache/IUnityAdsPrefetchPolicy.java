@@ -0,0 +1,23 @@
+package com.unity3d.ads.android.cache;
+
+import com.unity3d.ads.android.campaign.UnityAdsCampaign;
+
+/**
+ * Decides which campaigns of the ad plan have their videos cached ahead of time. Policy is asked
+ * again for every campaign whenever network or power state changes.
+ */
+public interface IUnityAdsPrefetchPolicy {
+	/**
+	 * @param campaign Campaign that allows caching its video
+	 * @param position Position of campaign in ad plan, 0 is the next one to be shown
+	 * @param conditions Current state of network, battery and storage
+	 * @return True if video should be downloaded now
+	 */
+	boolean shouldPrefetch(UnityAdsCampaign campaign, int position, UnityAdsPrefetchConditions conditions);
+
+	/**
+	 * Asked for campaigns that allow streaming and are not prefetched in full
+	 * @return True if the first seconds of video should be downloaded now, so that playback can start from cache
+	 */
+	boolean shouldPrefetchPrefix(UnityAdsCampaign campaign, int position, UnityAdsPrefetchConditions conditions);
+}
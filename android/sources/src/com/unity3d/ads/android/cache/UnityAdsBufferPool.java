@@ -0,0 +1,40 @@
+package com.unity3d.ads.android.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of I/O buffers shared by cache downloads and cache proxy. Buffers are heap buffers so that
+ * their backing array can be given to input streams and digests without copying.
+ */
+class UnityAdsBufferPool {
+	public static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_POOLED_BUFFERS = 8;
+
+	private static final ArrayDeque<ByteBuffer> _buffers = new ArrayDeque<>();
+
+	public static ByteBuffer acquire() {
+		ByteBuffer buffer;
+
+		synchronized(_buffers) {
+			buffer = _buffers.poll();
+		}
+
+		if(buffer == null) {
+			buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		}
+
+		buffer.clear();
+		return buffer;
+	}
+
+	public static void release(ByteBuffer buffer) {
+		if(buffer == null || buffer.capacity() != BUFFER_SIZE) return;
+
+		synchronized(_buffers) {
+			if(_buffers.size() < MAX_POOLED_BUFFERS) {
+				_buffers.push(buffer);
+			}
+		}
+	}
+}
@@ -1,58 +1,269 @@
 package com.unity3d.ads.android.cache;
 
 import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
 import android.os.Build;
+import android.os.FileObserver;
+import android.os.SystemClock;
 
 import java.io.File;
-import java.io.FilenameFilter;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.unity3d.ads.android.UnityAdsDeviceLog;
 import com.unity3d.ads.android.campaign.UnityAdsCampaign;
+import com.unity3d.ads.android.data.UnityAdsBandwidthEstimator;
+import com.unity3d.ads.android.data.UnityAdsShowPredictor;
 import com.unity3d.ads.android.properties.UnityAdsConstants;
 import com.unity3d.ads.android.properties.UnityAdsProperties;
 
 @TargetApi(Build.VERSION_CODES.GINGERBREAD)
 public class UnityAdsCache {
+	static final int PRIORITY_STREAMING_CAMPAIGN = -2;
+	private static final int PRIORITY_NEXT_CAMPAIGN = -1;
+	// Space reserved in cache index for a video of which only the first seconds are cached
+	private static final long PREFIX_SIZE_ESTIMATE = 1024 * 1024;
+	// Prefetch for the next show starts this much earlier than the download is estimated to take
+	private static final long PREFETCH_LEAD_TIME_MS = 60000;
+	// Prefetch isn't postponed for a shorter time than this
+	private static final long MIN_PREFETCH_DEFER_MS = 30000;
+	private static final long WARM_UP_LEAD_TIME_MS = 15000;
+	// Pessimistic throughput is used for estimating how long prefetch takes
+	private static final int PREFETCH_SPEED_PERCENTILE = 25;
 	private static File _cacheDirectory = null;
+	private static FileObserver _cacheObserver = null;
+	private static volatile boolean _playbackStreaming = false;
+	private static volatile boolean _playbackInProgress = false;
+	private static volatile IUnityAdsPrefetchPolicy _prefetchPolicy = new UnityAdsDefaultPrefetchPolicy();
+	private static volatile ArrayList<UnityAdsCampaign> _campaigns = null;
+	private static BroadcastReceiver _prefetchReceiver = null;
+
+	private enum CacheState { CACHED, NOT_CACHED, QUARANTINED }
+
+	// Cache state of every campaign in ad plan by campaign id, so that checking cache doesn't need to touch the file system
+	private static final ConcurrentHashMap<String, CacheState> _cacheStates = new ConcurrentHashMap<>();
+	// Campaigns sharing the same trailer use the same file
+	private static final ConcurrentHashMap<String, ArrayList<UnityAdsCampaign>> _fileCampaigns = new ConcurrentHashMap<>();
 
 	public static void initialize(ArrayList<UnityAdsCampaign> campaigns) {
 		if(campaigns == null || campaigns.size() == 0) return;
 
 		UnityAdsDeviceLog.debug("Unity Ads cache: initializing cache with " + campaigns.size() + " campaigns");
 
-		stopAllDownloads();
+		UnityAdsPrefetchScheduler.cancel();
 
-		HashMap<String,String> downloadFiles = new HashMap<>();
 		HashMap<String,Long> allFiles = new HashMap<>();
 
-		boolean first = true;
 		for(UnityAdsCampaign campaign : campaigns) {
-			// Note: Always cache first video in ad plan if allowCache flag is true for that video.
-			// Usually server forces first video to be cached but if ads are filtered due to app install check,
-			// server has no idea what is actually the first video after filtering
-			if(campaign.forceCacheVideo() || (campaign.allowCacheVideo() && first)) {
-				String filename = campaign.getVideoFilename();
-
-				if(!isFileCached(filename, campaign.getVideoFileExpectedSize())) {
-					UnityAdsDeviceLog.debug("Unity Ads cache: queuing " + filename + " for download");
-					downloadFiles.put(campaign.getVideoUrl(), filename);
-				} else {
-					UnityAdsDeviceLog.debug("Unity Ads cache: not downloading " + filename + ", already in cache");
+			allFiles.put(campaign.getVideoFilename(), campaign.getVideoFileExpectedSize());
+		}
+
+		// Cache index has to be loaded before checking which files are cached
+		initializeCacheDirectory(allFiles);
+
+		// Downloads restored from last session keep running if their file is still in ad plan, prefetch decides about them below
+		HashSet<String> targets = new HashSet<>();
+		if(getCacheDirectory() != null) {
+			for(String filename : allFiles.keySet()) {
+				targets.add(getFullFilename(filename));
+			}
+		}
+
+		UnityAdsDownloadManager.stopOtherDownloads(targets);
+		initializeCacheStates(campaigns);
+
+		_campaigns = new ArrayList<>(campaigns);
+		prefetchCampaigns(_campaigns);
+		startPrefetchReceiver();
+		optimizeCachedFiles(_campaigns);
+	}
+
+	/**
+	 * Sets policy that decides which videos are cached ahead of time
+	 * @param policy Policy or null for default policy
+	 */
+	public static void setPrefetchPolicy(IUnityAdsPrefetchPolicy policy) {
+		_prefetchPolicy = policy != null ? policy : new UnityAdsDefaultPrefetchPolicy();
+	}
+
+	// Queues downloads the prefetch policy wants and stops background downloads it doesn't want anymore
+	private static synchronized void prefetchCampaigns(ArrayList<UnityAdsCampaign> campaigns) {
+		if(campaigns == null || getCacheDirectory() == null) return;
+
+		UnityAdsPrefetchConditions conditions = UnityAdsPrefetchConditions.getCurrent(getCacheDirectory());
+		UnityAdsDeviceLog.debug("Unity Ads cache: prefetching with " + conditions);
+
+		LinkedHashMap<UnityAdsCampaign,Integer> downloadCampaigns = new LinkedHashMap<>();
+		HashSet<String> wantedFiles = new HashSet<>();
+		HashSet<String> unwantedFiles = new HashSet<>();
+		LinkedHashMap<UnityAdsCampaign,Integer> prefixCampaigns = new LinkedHashMap<>();
+
+		for(int position = 0; position < campaigns.size(); position++) {
+			UnityAdsCampaign campaign = campaigns.get(position);
+			String filename = campaign.getVideoFilename();
+
+			if(!campaign.allowCacheVideo() && !campaign.forceCacheVideo()) continue;
+
+			if(!_prefetchPolicy.shouldPrefetch(campaign, position, conditions)) {
+				unwantedFiles.add(filename);
+
+				if(campaign.allowStreamingVideo() && _prefetchPolicy.shouldPrefetchPrefix(campaign, position, conditions) &&
+					!isCampaignCached(campaign) && !isCampaignQuarantined(campaign)) {
+					prefixCampaigns.put(campaign, getDownloadPriority(campaign, position, campaigns.size()));
 				}
+
+				continue;
 			}
 
-			allFiles.put(campaign.getVideoFilename(), campaign.getVideoFileExpectedSize());
+			wantedFiles.add(filename);
 
-			first = false;
+			if(isCampaignQuarantined(campaign)) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: not downloading " + filename + ", previous download failed verification");
+			} else if(!isCampaignCached(campaign)) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: queuing " + filename + " for download");
+				downloadCampaigns.put(campaign, getDownloadPriority(campaign, position, campaigns.size()));
+			} else {
+				UnityAdsDeviceLog.debug("Unity Ads cache: not downloading " + filename + ", already in cache");
+			}
 		}
 
-		initializeCacheDirectory(allFiles);
+		scheduleForNextShow(campaigns, downloadCampaigns);
+
+		// Campaigns sharing a trailer may disagree, the file is kept if any of them wants it
+		unwantedFiles.removeAll(wantedFiles);
+
+		// Background downloads of these are turned into prefix downloads instead of stopping them
+		for(UnityAdsCampaign campaign : prefixCampaigns.keySet()) {
+			unwantedFiles.remove(campaign.getVideoFilename());
+		}
+		for(String filename : unwantedFiles) {
+			if(UnityAdsDownloadManager.isDownloading(getFullFilename(filename))) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: prefetch policy stopped download of " + filename);
+				UnityAdsDownloadManager.cancelBackgroundDownload(getFullFilename(filename));
+			}
+		}
+
+		for(UnityAdsCampaign campaign : downloadCampaigns.keySet()) {
+			UnityAdsCacheIndex.addFile(campaign.getVideoFilename(), campaign.getVideoUrl(), campaign.getVideoFileExpectedSize());
+		}
+
+		for(UnityAdsCampaign campaign : prefixCampaigns.keySet()) {
+			if(wantedFiles.contains(campaign.getVideoFilename())) continue;
+
+			UnityAdsCacheIndex.addPrefixFile(campaign.getVideoFilename(), campaign.getVideoUrl(), Math.min(PREFIX_SIZE_ESTIMATE, campaign.getVideoFileExpectedSize()));
+		}
+
+		UnityAdsCacheIndex.evict(UnityAdsProperties.CACHE_SIZE_BUDGET);
+
+		for(Map.Entry<UnityAdsCampaign,Integer> entry : downloadCampaigns.entrySet()) {
+			UnityAdsCampaign campaign = entry.getKey();
+			UnityAdsDownloadManager.download(campaign.getVideoUrl(), getFullFilename(campaign.getVideoFilename()), campaign.getVideoFileExpectedSize(), campaign.getVideoHash(), entry.getValue());
+		}
+
+		for(Map.Entry<UnityAdsCampaign,Integer> entry : prefixCampaigns.entrySet()) {
+			UnityAdsCampaign campaign = entry.getKey();
+			if(wantedFiles.contains(campaign.getVideoFilename()) || campaign.getVideoFileExpectedSize() <= 0) continue;
 
-		for(Map.Entry<String,String> entry : downloadFiles.entrySet()) {
-			UnityAdsCacheThread.download(entry.getKey(), getFullFilename(entry.getValue()));
+			UnityAdsDownloadManager.downloadPrefix(campaign.getVideoUrl(), getFullFilename(campaign.getVideoFilename()), campaign.getVideoFileExpectedSize(), campaign.getVideoHash(), entry.getValue());
+		}
+	}
+
+	// Downloads after the next campaign are started only when they are needed to finish before the predicted next show
+	private static void scheduleForNextShow(ArrayList<UnityAdsCampaign> campaigns, LinkedHashMap<UnityAdsCampaign,Integer> downloadCampaigns) {
+		long nextShow = UnityAdsShowPredictor.getNextShowTime();
+		if(nextShow == -1 || campaigns.size() == 0) return;
+
+		long now = SystemClock.elapsedRealtime();
+		UnityAdsCampaign nextCampaign = campaigns.get(0);
+
+		// Next video is going to be streamed, connect to its host before the show
+		if(!downloadCampaigns.containsKey(nextCampaign) && !isCampaignCached(nextCampaign)) {
+			String url = nextCampaign.allowCacheVideo() ? nextCampaign.getVideoUrl() : nextCampaign.getVideoStreamUrl();
+			if(url != null) {
+				UnityAdsPrefetchScheduler.scheduleWarmUp(url, nextShow - WARM_UP_LEAD_TIME_MS - now);
+			}
+		}
+
+		long bytes = 0;
+		for(UnityAdsCampaign campaign : downloadCampaigns.keySet()) {
+			if(campaign != nextCampaign) {
+				bytes += Math.max(0, campaign.getVideoFileExpectedSize());
+			}
+		}
+
+		if(bytes == 0) return;
+
+		long speed = UnityAdsBandwidthEstimator.getPercentile(PREFETCH_SPEED_PERCENTILE);
+		if(speed <= 0) {
+			speed = UnityAdsProperties.SLOW_NETWORK_SPEED;
+		}
+
+		long startTime = nextShow - bytes / speed - PREFETCH_LEAD_TIME_MS;
+		if(startTime - now < MIN_PREFETCH_DEFER_MS) return;
+
+		Iterator<UnityAdsCampaign> iterator = downloadCampaigns.keySet().iterator();
+		while(iterator.hasNext()) {
+			UnityAdsCampaign campaign = iterator.next();
+			if(campaign == nextCampaign) continue;
+
+			iterator.remove();
+
+			// Downloads queued earlier or restored at init wait for the schedule too, partial files are kept
+			String filename = campaign.getVideoFilename();
+			if(!filename.equals(nextCampaign.getVideoFilename()) && UnityAdsDownloadManager.isDownloading(getFullFilename(filename))) {
+				UnityAdsDownloadManager.cancelBackgroundDownload(getFullFilename(filename));
+			}
+		}
+
+		UnityAdsDeviceLog.debug("Unity Ads cache: next show predicted in " + (nextShow - now) + "ms, prefetching " + bytes + " bytes in " + (startTime - now) + "ms");
+		UnityAdsPrefetchScheduler.schedulePrefetch(startTime - now);
+	}
+
+	static void prefetchScheduled() {
+		prefetchCampaigns(_campaigns);
+	}
+
+	// Prefetch decisions are made again when device moves to another network or is plugged in or unplugged
+	private static synchronized void startPrefetchReceiver() {
+		if(_prefetchReceiver != null || UnityAdsProperties.APPLICATION_CONTEXT == null) return;
+
+		_prefetchReceiver = new BroadcastReceiver() {
+			@Override
+			public void onReceive(Context context, Intent intent) {
+				if(isInitialStickyBroadcast()) return;
+
+				new Thread(new Runnable() {
+					@Override
+					public void run() {
+						prefetchCampaigns(_campaigns);
+					}
+				}).start();
+			}
+		};
+
+		IntentFilter filter = new IntentFilter();
+		filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
+		filter.addAction(Intent.ACTION_POWER_CONNECTED);
+		filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+		filter.addAction(Intent.ACTION_BATTERY_LOW);
+		filter.addAction(Intent.ACTION_BATTERY_OKAY);
+		filter.addAction(Intent.ACTION_DEVICE_STORAGE_LOW);
+		filter.addAction(Intent.ACTION_DEVICE_STORAGE_OK);
+
+		try {
+			UnityAdsProperties.APPLICATION_CONTEXT.registerReceiver(_prefetchReceiver, filter);
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: couldn't register prefetch receiver: " + e.getMessage());
 		}
 	}
 
@@ -60,30 +271,244 @@ public class UnityAdsCache {
 		String filename = campaign.getVideoFilename();
 		long size = campaign.getVideoFileExpectedSize();
 
-		// Check if video is already in cache
-		if(isFileCached(filename, size)) return;
+		// Check if video is already in cache or failed verification earlier
+		if(isCampaignCached(campaign) || isCampaignQuarantined(campaign)) return;
+
+		UnityAdsCacheIndex.addFile(filename, campaign.getVideoUrl(), size);
+
+		// Campaign is the next one to be shown so it goes before everything else in the download queue
+		UnityAdsDownloadManager.download(campaign.getVideoUrl(), getFullFilename(filename), size, campaign.getVideoHash(), PRIORITY_NEXT_CAMPAIGN);
+	}
+
+	/**
+	 * Returns URL for playing a campaign that is not cached yet. Video is played through local cache
+	 * proxy so that the bytes streamed to the player are also cached.
+	 */
+	public static String getStreamingUrl(UnityAdsCampaign campaign) {
+		String filename = campaign.getVideoFilename();
+		long size = campaign.getVideoFileExpectedSize();
+
+		// Proxy needs to know file size to answer range requests of the player
+		if(getCacheDirectory() == null || size <= 0 || !campaign.allowCacheVideo() || isCampaignQuarantined(campaign)) {
+			return campaign.getVideoStreamUrl();
+		}
 
-		String currentDownload = UnityAdsCacheThread.getCurrentDownload();
+		String url = UnityAdsCacheProxy.getUrl(campaign.getVideoUrl(), getFullFilename(filename), size);
+		if(url == null) return campaign.getVideoStreamUrl();
 
-		// Check if video is currently downloaded
-		if(currentDownload != null && currentDownload.equals(getFullFilename(filename))) return;
+		UnityAdsCacheIndex.addFile(filename, campaign.getVideoUrl(), size);
+		UnityAdsDownloadManager.download(campaign.getVideoUrl(), getFullFilename(filename), size, campaign.getVideoHash(), PRIORITY_STREAMING_CAMPAIGN);
 
-		UnityAdsCacheThread.download(campaign.getVideoUrl(), getFullFilename(filename));
+		return url;
+	}
+
+	// Next campaign in ad plan always goes first, then campaigns the backend forces to be cached and then the rest, all in ad plan order
+	private static int getDownloadPriority(UnityAdsCampaign campaign, int position, int campaignCount) {
+		if(position == 0 || campaign.forceCacheVideo()) return position;
+
+		return campaignCount + position;
 	}
 
 	public static boolean isCampaignCached(UnityAdsCampaign campaign) {
 		if(campaign == null) return false;
+
+		String campaignId = campaign.getCampaignId();
+		if(campaignId == null) return false;
+
+		CacheState state = _cacheStates.get(campaignId);
+
+		// Campaign is not in current ad plan
+		if(state == null) {
+			state = getFileState(campaign);
+		}
+
+		return state == CacheState.CACHED;
+	}
+
+	/**
+	 * Moves moov atom of a downloaded video to the front unless that has already been done. Files are
+	 * not rewritten during playback, because cache proxy opens the file again on every range request
+	 * and player would get bytes of the new layout. They are rewritten after playback has finished.
+	 */
+	static void optimizeFile(String filename) {
+		if(_playbackInProgress || UnityAdsCacheProxy.isServing(filename) || UnityAdsCacheIndex.isFaststartChecked(filename)) return;
+
+		File file = new File(getFullFilename(filename));
+		if(!file.exists()) return;
+
+		int result = UnityAdsFaststart.process(file);
+		if(result != UnityAdsFaststart.NOT_CHECKED && !UnityAdsCacheIndex.faststartChecked(filename, result == UnityAdsFaststart.RELOCATED)) {
+			// File was evicted while it was being rewritten
+			if(file.exists() && !file.delete()) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: couldn't delete evicted file " + filename);
+			}
+		}
+	}
+
+	private static void optimizeCachedFiles(final ArrayList<UnityAdsCampaign> campaigns) {
+		if(campaigns == null || _playbackInProgress) return;
+
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for(UnityAdsCampaign campaign : campaigns) {
+					if(isCampaignCached(campaign)) {
+						optimizeFile(campaign.getVideoFilename());
+					}
+				}
+			}
+		});
+
+		thread.setName("UnityAdsCacheFaststart");
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Updates cache state of campaign that uses filename after the file has been downloaded, deleted or evicted
+	 */
+	static void refreshFileState(String filename) {
+		if(filename == null) return;
+
+		ArrayList<UnityAdsCampaign> fileCampaigns = _fileCampaigns.get(filename);
+		if(fileCampaigns == null) return;
+
+		for(UnityAdsCampaign campaign : fileCampaigns) {
+			CacheState state = getFileState(campaign);
+			UnityAdsDeviceLog.debug("Unity Ads cache: " + filename + " of campaign " + campaign.getCampaignId() + " is now " + state);
+			_cacheStates.put(campaign.getCampaignId(), state);
+		}
+	}
+
+	private static void initializeCacheStates(ArrayList<UnityAdsCampaign> campaigns) {
+		HashMap<String, ArrayList<UnityAdsCampaign>> allFileCampaigns = new HashMap<>();
+		HashMap<String, Set<String>> aliases = new HashMap<>();
+
+		_cacheStates.clear();
+		_fileCampaigns.clear();
+
+		for(UnityAdsCampaign campaign : campaigns) {
+			String campaignId = campaign.getCampaignId();
+			String filename = campaign.getVideoFilename();
+			if(campaignId == null || filename == null) continue;
+
+			ArrayList<UnityAdsCampaign> fileCampaigns = allFileCampaigns.get(filename);
+			if(fileCampaigns == null) {
+				fileCampaigns = new ArrayList<>();
+				allFileCampaigns.put(filename, fileCampaigns);
+				aliases.put(filename, new HashSet<String>());
+			} else {
+				UnityAdsDeviceLog.debug("Unity Ads cache: campaign " + campaignId + " shares " + filename + " with " + fileCampaigns.size() + " other campaigns");
+			}
+
+			fileCampaigns.add(campaign);
+			aliases.get(filename).add(campaignId);
+			_cacheStates.put(campaignId, getFileState(campaign));
+		}
+
+		_fileCampaigns.putAll(allFileCampaigns);
+		UnityAdsCacheIndex.setAliases(aliases);
+	}
+
+	private static CacheState getFileState(UnityAdsCampaign campaign) {
 		String filename = campaign.getVideoFilename();
-		long size = campaign.getVideoFileExpectedSize();
 
-		return isFileCached(filename, size);
+		if(isFileQuarantined(filename)) return CacheState.QUARANTINED;
+
+		// Files of campaigns with a hash are only used once download has verified them
+		if(isFileCached(filename, campaign.getVideoFileExpectedSize()) && (campaign.getVideoHash() == null || UnityAdsCacheIndex.hasVerifiedContent(filename))) {
+			return CacheState.CACHED;
+		}
+
+		return CacheState.NOT_CACHED;
+	}
+
+	private static boolean isCampaignQuarantined(UnityAdsCampaign campaign) {
+		CacheState state = _cacheStates.get(campaign.getCampaignId());
+		return state != null ? state == CacheState.QUARANTINED : isFileQuarantined(campaign.getVideoFilename());
+	}
+
+	/**
+	 * @param max Maximum number of keys returned
+	 * @return Content keys of videos that are completely cached, most recently used first
+	 */
+	public static ArrayList<String> getCachedContentKeys(int max) {
+		if(_cacheDirectory == null) return new ArrayList<>();
+
+		return UnityAdsCacheIndex.getCachedContentKeys(max);
+	}
+
+	public static void campaignShown(UnityAdsCampaign campaign) {
+		if(campaign == null) return;
+
+		UnityAdsCacheIndex.fileUsed(campaign.getVideoFilename());
 	}
 
 	public static void stopAllDownloads() {
-		UnityAdsCacheThread.stopAllDownloads();
+		UnityAdsPrefetchScheduler.cancel();
+		UnityAdsDownloadManager.stopAllDownloads();
 	}
 
-	private static void initializeCacheDirectory(HashMap<String,Long> files) {
+	/**
+	 * Lets downloads run at full speed while a cached video plays, streamed video gets most of the bandwidth
+	 * @param cached True if video is played from cache
+	 */
+	public static void playbackStarted(boolean cached) {
+		UnityAdsCacheStats.videoShown(cached);
+		_playbackInProgress = true;
+		_playbackStreaming = !cached;
+		UnityAdsDownloadThrottle.setMode(cached ? UnityAdsDownloadThrottle.ThrottleMode.FULL_SPEED : UnityAdsDownloadThrottle.ThrottleMode.LIMITED);
+	}
+
+	/**
+	 * Pauses background downloads while streamed video is buffering
+	 */
+	public static void playbackBuffering(boolean buffering) {
+		if(!_playbackStreaming) return;
+
+		UnityAdsDownloadThrottle.setMode(buffering ? UnityAdsDownloadThrottle.ThrottleMode.PAUSED : UnityAdsDownloadThrottle.ThrottleMode.LIMITED);
+	}
+
+	public static void playbackFinished() {
+		_playbackInProgress = false;
+		_playbackStreaming = false;
+		UnityAdsDownloadThrottle.setMode(UnityAdsDownloadThrottle.ThrottleMode.FULL_SPEED);
+		UnityAdsCacheProxy.clearFiles();
+
+		// Files that were downloaded during playback are rewritten now
+		optimizeCachedFiles(_campaigns);
+
+		// Show moved the predicted time of the next one
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				prefetchCampaigns(_campaigns);
+			}
+		}).start();
+	}
+
+	/**
+	 * Restarts downloads that were queued when app was closed last time. Called at init so that caching
+	 * continues without waiting for the ad plan.
+	 */
+	public static void restoreDownloads() {
+		if(!resolveCacheDirectory()) return;
+
+		ArrayList<UnityAdsDownloadJobStore.StoredJob> storedJobs = UnityAdsDownloadJobStore.load();
+		ArrayList<UnityAdsDownloadJobStore.StoredJob> restoredJobs = new ArrayList<>();
+
+		for(UnityAdsDownloadJobStore.StoredJob storedJob : storedJobs) {
+			if(isFileCached(storedJob.filename, storedJob.expectedSize) && (storedJob.expectedHash == null || UnityAdsCacheIndex.hasVerifiedContent(storedJob.filename))) continue;
+
+			UnityAdsCacheIndex.addFile(storedJob.filename, storedJob.source, storedJob.expectedSize);
+			restoredJobs.add(storedJob);
+		}
+
+		UnityAdsDeviceLog.debug("Unity Ads cache: restoring " + restoredJobs.size() + " downloads");
+		UnityAdsDownloadManager.restore(getCacheDirectory(), restoredJobs);
+	}
+
+	private static synchronized boolean resolveCacheDirectory() {
 		_cacheDirectory = new File(UnityAdsProperties.APPLICATION_CONTEXT.getFilesDir().getPath());
 
 		if (Build.VERSION.SDK_INT > 18) {
@@ -106,59 +531,67 @@ public class UnityAdsCache {
 
 		if(!_cacheDirectory.isDirectory()) {
 			UnityAdsDeviceLog.error("Unity Ads cache: Creating cache dir failed");
-			return;
+			return false;
 		}
 
-		// Don't delete pending events
-		files.put(UnityAdsConstants.PENDING_REQUESTS_FILENAME, (long)-1);
+		startCacheObserver();
+		UnityAdsCacheIndex.load(_cacheDirectory, !_cacheDirectory.getAbsolutePath().endsWith(UnityAdsConstants.CACHE_DIR_NAME));
+		UnityAdsDownloadJobStore.setCacheDirectory(_cacheDirectory);
 
-		File[] fileList;
+		return true;
+	}
 
-		if(_cacheDirectory.getAbsolutePath().endsWith(UnityAdsConstants.CACHE_DIR_NAME)) {
-			UnityAdsDeviceLog.debug("Unity Ads cache: checking cache directory " + _cacheDirectory.getAbsolutePath());
-			fileList = _cacheDirectory.listFiles();
-		} else {
-			UnityAdsDeviceLog.debug("Unity Ads cache: checking app directory for Unity Ads cached files");
-			FilenameFilter filter = new FilenameFilter() {
-				@Override
-				public boolean accept(File dir, String filename) {
-					boolean filter = filename.startsWith(UnityAdsConstants.UNITY_ADS_LOCALFILE_PREFIX);
-					UnityAdsDeviceLog.debug("Unity Ads cache: filtering result for file: " + filename + ", " + filter);
-					return filter;
+	private static void initializeCacheDirectory(HashMap<String,Long> files) {
+		if(!resolveCacheDirectory()) return;
+
+		// Files that are not in ad plan stay in cache until they are evicted, only files with wrong size are deleted
+		for(Map.Entry<String,Long> file : files.entrySet()) {
+			String name = file.getKey();
+			long expectedSize = file.getValue();
+			File cacheFile = new File(_cacheDirectory, name);
+
+			if(expectedSize != -1 && cacheFile.exists() && cacheFile.length() != expectedSize) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: " + name + " file size mismatch, deleting from cache");
+				if(UnityAdsCacheIndex.getHits(name) == 0) {
+					UnityAdsCacheStats.bytesWasted(cacheFile.length());
 				}
-			};
 
-			fileList = _cacheDirectory.listFiles(filter);
+				boolean success = cacheFile.delete();
+				if (!success) UnityAdsDeviceLog.debug("Unity Ads cache: Couldn't delete file: " + cacheFile.getAbsolutePath());
+			}
 		}
+	}
 
-		if(fileList == null) {
-			UnityAdsDeviceLog.error("Unity Ads cache: unable to read cache directory");
-			return;
+	// Files can be removed behind our back, for example when user clears app cache from system settings
+	private static void startCacheObserver() {
+		if(_cacheObserver != null) {
+			_cacheObserver.stopWatching();
 		}
 
-		for(File cacheFile : fileList) {
-			String name = cacheFile.getName();
+		_cacheObserver = new FileObserver(_cacheDirectory.getAbsolutePath(), FileObserver.DELETE | FileObserver.DELETE_SELF | FileObserver.MOVED_FROM | FileObserver.MOVED_TO | FileObserver.CLOSE_WRITE) {
+			@Override
+			public void onEvent(int event, String path) {
+				if((event & FileObserver.DELETE_SELF) != 0) {
+					UnityAdsDeviceLog.debug("Unity Ads cache: cache directory deleted");
 
-			if(!files.containsKey(name)) {
-				UnityAdsDeviceLog.debug("Unity Ads cache: " + name + " not found in ad plan, deleting from cache");
-				boolean success = cacheFile.delete();
-				if (!success) UnityAdsDeviceLog.debug("Unity Ads cache: Couldn't delete file: " + cacheFile.getAbsolutePath());
-			} else {
-				long expectedSize = files.get(name);
+					for(String filename : _fileCampaigns.keySet()) {
+						refreshFileState(filename);
+					}
 
-				if(expectedSize != -1) {
-					long size = cacheFile.length();
+					return;
+				}
 
-					if(size != expectedSize) {
-						UnityAdsDeviceLog.debug("Unity Ads cache: " + name + " file size mismatch, deleting from cache");
-						boolean success = cacheFile.delete();
-						if (!success) UnityAdsDeviceLog.debug("Unity Ads cache: Couldn't delete file: " + cacheFile.getAbsolutePath());
-					} else {
-						UnityAdsDeviceLog.debug("Unity Ads cache: " + name + " found, keeping");
-					}
+				if(path == null) return;
+
+				if(path.endsWith(UnityAdsConstants.CACHE_QUARANTINE_FILE_SUFFIX)) {
+					refreshFileState(path.substring(0, path.length() - UnityAdsConstants.CACHE_QUARANTINE_FILE_SUFFIX.length()));
+				} else {
+					refreshFileState(path);
 				}
 			}
-		}
+		};
+
+		_cacheObserver.startWatching();
 	}
 
 	public static String getCacheDirectory() {
@@ -169,6 +602,10 @@ public class UnityAdsCache {
 		return getCacheDirectory() + "/" + filename;
 	}
 
+	private static boolean isFileQuarantined(String file) {
+		return new File(getCacheDirectory() + "/" + file + UnityAdsConstants.CACHE_QUARANTINE_FILE_SUFFIX).exists();
+	}
+
 	private static boolean isFileCached(String file, long size) {
 		File cacheFile = new File(getCacheDirectory() + "/" + file);
 
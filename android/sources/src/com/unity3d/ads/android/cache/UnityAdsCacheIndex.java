@@ -0,0 +1,503 @@
+package com.unity3d.ads.android.cache;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.UnityAdsUtils;
+import com.unity3d.ads.android.properties.UnityAdsConstants;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Persistent index of files in the video cache. Index keeps track of size, use and source of every
+ * cached video so that cache can be kept within its size budget by evicting least recently used
+ * files instead of deleting everything that isn't in the current ad plan. Index is written on a
+ * background thread shortly after it changes, so a burst of changes is written only once.
+ */
+class UnityAdsCacheIndex {
+	private static final String INDEX_FILES_KEY = "files";
+	private static final String INDEX_FILENAME_KEY = "filename";
+	private static final String INDEX_SOURCE_KEY = "source";
+	private static final String INDEX_SIZE_KEY = "size";
+	private static final String INDEX_LAST_USED_KEY = "lastUsed";
+	private static final String INDEX_HITS_KEY = "hits";
+	private static final String INDEX_VERIFIED_KEY = "verified";
+	private static final String INDEX_FASTSTART_CHECKED_KEY = "faststartChecked";
+	private static final String INDEX_RELOCATED_KEY = "relocated";
+	private static final String INDEX_ALIASES_KEY = "aliases";
+
+	// Content keys are hashes, shorter hex strings are not keys
+	private static final int CONTENT_KEY_MIN_LENGTH = 16;
+	private static final long SAVE_DELAY_MS = 500;
+
+	private static final HashMap<String, Entry> _entries = new HashMap<>();
+	// Campaigns in ad plan that use each file, campaigns with the same trailer share one file
+	private static HashMap<String, Set<String>> _aliases = new HashMap<>();
+	private static File _cacheDirectory = null;
+	private static boolean _savePending = false;
+	private static Timer _saveTimer = null;
+
+	private static class Entry {
+		public final String filename;
+		public String source;
+		public long size;
+		public long lastUsed;
+		public int hits;
+		// File was checked against the hash in ad plan when it was downloaded
+		public boolean verified;
+		// Atom order of file has been checked and moov moved to the front if needed
+		public boolean faststartChecked = false;
+		// File was verified and then rewritten with moov in front, so its bytes don't match the hash anymore
+		public boolean relocated = false;
+
+		public Entry(String filename, String source, long size, long lastUsed, int hits, boolean verified) {
+			this.filename = filename;
+			this.source = source;
+			this.size = size;
+			this.lastUsed = lastUsed;
+			this.hits = hits;
+			this.verified = verified;
+		}
+	}
+
+	/**
+	 * Loads the index of cache directory. If there is no index yet, the directory is scanned once and
+	 * all existing cache files are added to the index.
+	 * @param cacheDirectory Cache directory
+	 * @param appDirectory True if cache directory is the shared app files directory and only files with Unity Ads prefix belong to cache
+	 */
+	public static synchronized void load(File cacheDirectory, boolean appDirectory) {
+		if(cacheDirectory.equals(_cacheDirectory)) return;
+
+		_cacheDirectory = cacheDirectory;
+		_entries.clear();
+		_aliases.clear();
+
+		File indexFile = getIndexFile();
+
+		if(indexFile.exists() && readIndex(indexFile)) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: loaded index of " + _entries.size() + " files");
+			pruneMissingFiles();
+		} else {
+			UnityAdsDeviceLog.debug("Unity Ads cache: no cache index found, building index from cache directory");
+			scanCacheDirectory(appDirectory);
+			save();
+		}
+	}
+
+	/**
+	 * Adds a file that is about to be downloaded to the index. Size is the expected size of the file
+	 * so that the space for downloads is taken into account when cache size is checked.
+	 */
+	public static synchronized void addFile(String filename, String source, long size) {
+		Entry entry = _entries.get(filename);
+
+		if(entry == null) {
+			_entries.put(filename, new Entry(filename, source, size, System.currentTimeMillis(), 0, false));
+		} else {
+			entry.source = source;
+			entry.size = size;
+			entry.verified = false;
+			entry.faststartChecked = false;
+			entry.relocated = false;
+		}
+
+		save();
+	}
+
+	/**
+	 * Adds a file of which only the beginning is downloaded. File already in index keeps its size.
+	 */
+	public static synchronized void addPrefixFile(String filename, String source, long size) {
+		if(_entries.containsKey(filename)) return;
+
+		_entries.put(filename, new Entry(filename, source, size, System.currentTimeMillis(), 0, false));
+		save();
+	}
+
+	public static synchronized void fileDownloaded(String filename, long size, boolean verified) {
+		Entry entry = _entries.get(filename);
+		if(entry == null) return;
+
+		entry.size = size;
+		entry.verified = verified;
+		entry.relocated = false;
+		entry.faststartChecked = false;
+		entry.lastUsed = System.currentTimeMillis();
+		save();
+	}
+
+	public static synchronized boolean isFaststartChecked(String filename) {
+		Entry entry = _entries.get(filename);
+		return entry != null && entry.faststartChecked;
+	}
+
+	/**
+	 * @return True if file was verified, or is a verified file that faststart has rewritten since
+	 */
+	public static synchronized boolean hasVerifiedContent(String filename) {
+		Entry entry = _entries.get(filename);
+		return entry != null && (entry.verified || entry.relocated);
+	}
+
+	/**
+	 * @param relocated True if file was rewritten, it is no longer marked verified
+	 * @return False if file is not in index anymore
+	 */
+	public static synchronized boolean faststartChecked(String filename, boolean relocated) {
+		Entry entry = _entries.get(filename);
+		if(entry == null) return false;
+
+		entry.faststartChecked = true;
+
+		if(relocated) {
+			entry.relocated = entry.verified;
+			entry.verified = false;
+		}
+
+		save();
+		return true;
+	}
+
+	/**
+	 * @return How many times file has been shown, -1 if file is not in index
+	 */
+	public static synchronized int getHits(String filename) {
+		Entry entry = _entries.get(filename);
+		return entry != null ? entry.hits : -1;
+	}
+
+	public static synchronized void fileUsed(String filename) {
+		Entry entry = _entries.get(filename);
+		if(entry == null) return;
+
+		entry.lastUsed = System.currentTimeMillis();
+		entry.hits++;
+		save();
+	}
+
+	/**
+	 * Sets campaign ids of the current ad plan that refer to each file. Files referred by campaigns
+	 * are evicted only if nothing else is left, and the ones with fewer references go first.
+	 */
+	public static synchronized void setAliases(HashMap<String, Set<String>> aliases) {
+		_aliases = new HashMap<>();
+
+		for(Map.Entry<String, Set<String>> alias : aliases.entrySet()) {
+			_aliases.put(alias.getKey(), new HashSet<>(alias.getValue()));
+		}
+
+		save();
+	}
+
+	/**
+	 * @param max Maximum number of keys returned
+	 * @return Content keys of completely cached files, most recently used first
+	 */
+	public static synchronized ArrayList<String> getCachedContentKeys(int max) {
+		ArrayList<Entry> entries = new ArrayList<>(_entries.values());
+
+		Collections.sort(entries, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry lhs, Entry rhs) {
+				if(lhs.lastUsed != rhs.lastUsed) {
+					return lhs.lastUsed > rhs.lastUsed ? -1 : 1;
+				}
+
+				return 0;
+			}
+		});
+
+		ArrayList<String> keys = new ArrayList<>();
+
+		for(Entry entry : entries) {
+			if(keys.size() >= max) break;
+
+			File file = getFile(entry.filename);
+			if(!file.exists() || (entry.size > 0 && file.length() != entry.size)) continue;
+
+			String key = getContentKey(entry.filename);
+			if(key != null && !keys.contains(key)) {
+				keys.add(key);
+			}
+		}
+
+		return keys;
+	}
+
+	public static synchronized int getReferenceCount(String filename) {
+		Set<String> aliases = _aliases.get(filename);
+		return aliases != null ? aliases.size() : 0;
+	}
+
+	/**
+	 * Evicts least referenced and least recently used files until cache fits into the size budget
+	 */
+	public static synchronized void evict(long budget) {
+		long totalSize = 0;
+		ArrayList<Entry> entries = new ArrayList<>(_entries.values());
+
+		for(Entry entry : entries) {
+			totalSize += entry.size > 0 ? entry.size : 0;
+		}
+
+		if(totalSize <= budget) return;
+
+		Collections.sort(entries, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry lhs, Entry rhs) {
+				int lhsReferences = getReferenceCount(lhs.filename);
+				int rhsReferences = getReferenceCount(rhs.filename);
+
+				if(lhsReferences != rhsReferences) {
+					return lhsReferences < rhsReferences ? -1 : 1;
+				}
+
+				if(lhs.lastUsed != rhs.lastUsed) {
+					return lhs.lastUsed < rhs.lastUsed ? -1 : 1;
+				}
+
+				return 0;
+			}
+		});
+
+		for(Entry entry : entries) {
+			if(totalSize <= budget) break;
+
+			// Current ad plan files are never evicted while they are being downloaded
+			if(getReferenceCount(entry.filename) > 0 && UnityAdsDownloadManager.isDownloading(getFile(entry.filename).getAbsolutePath())) continue;
+
+			UnityAdsDeviceLog.debug("Unity Ads cache: evicting " + entry.filename + " of " + entry.size + " bytes, last used " + entry.lastUsed + ", " + getReferenceCount(entry.filename) + " references");
+			_entries.remove(entry.filename);
+			long deletedBytes = deleteCacheFiles(entry.filename);
+			if(entry.hits == 0) {
+				UnityAdsCacheStats.bytesWasted(deletedBytes);
+			}
+
+			UnityAdsCache.refreshFileState(entry.filename);
+			totalSize -= entry.size > 0 ? entry.size : 0;
+		}
+
+		save();
+	}
+
+	// Cache files are named prefix + content key + "-" + name of video, files cached by old versions have no key
+	private static String getContentKey(String filename) {
+		if(!filename.startsWith(UnityAdsConstants.UNITY_ADS_LOCALFILE_PREFIX)) return null;
+
+		// Name is prefix, content key and an optional extension
+		int start = UnityAdsConstants.UNITY_ADS_LOCALFILE_PREFIX.length();
+		int end = filename.indexOf('.', start);
+		if(end == -1) end = filename.length();
+		if(end - start < CONTENT_KEY_MIN_LENGTH) return null;
+
+		for(int i = start; i < end; i++) {
+			if(Character.digit(filename.charAt(i), 16) == -1) return null;
+		}
+
+		return filename.substring(start, end);
+	}
+
+	private static File getIndexFile() {
+		return new File(_cacheDirectory, UnityAdsConstants.CACHE_INDEX_FILENAME);
+	}
+
+	private static File getFile(String filename) {
+		return new File(_cacheDirectory, filename);
+	}
+
+	// Returns how many bytes were deleted
+	private static long deleteCacheFiles(String filename) {
+		File[] files = {
+			getFile(filename),
+			getFile(filename + UnityAdsConstants.CACHE_PARTIAL_FILE_SUFFIX),
+			getFile(filename + UnityAdsConstants.CACHE_JOURNAL_FILE_SUFFIX),
+			getFile(filename + UnityAdsConstants.CACHE_QUARANTINE_FILE_SUFFIX),
+			getFile(filename + UnityAdsConstants.CACHE_FASTSTART_FILE_SUFFIX)
+		};
+
+		long deletedBytes = 0;
+
+		for(File file : files) {
+			if(!file.exists()) continue;
+
+			long length = file.length();
+			if(file.delete()) {
+				deletedBytes += length;
+			} else {
+				UnityAdsDeviceLog.debug("Unity Ads cache: Couldn't delete file: " + file.getAbsolutePath());
+			}
+		}
+
+		return deletedBytes;
+	}
+
+	private static boolean readIndex(File indexFile) {
+		try {
+			JSONObject json = new JSONObject(UnityAdsUtils.readFile(indexFile, false));
+			JSONArray files = json.getJSONArray(INDEX_FILES_KEY);
+
+			for(int i = 0; i < files.length(); i++) {
+				JSONObject file = files.getJSONObject(i);
+				Entry entry = new Entry(
+					file.getString(INDEX_FILENAME_KEY),
+					file.optString(INDEX_SOURCE_KEY, null),
+					file.getLong(INDEX_SIZE_KEY),
+					file.getLong(INDEX_LAST_USED_KEY),
+					file.getInt(INDEX_HITS_KEY),
+					file.optBoolean(INDEX_VERIFIED_KEY, false));
+				entry.faststartChecked = file.optBoolean(INDEX_FASTSTART_CHECKED_KEY, false);
+				entry.relocated = file.optBoolean(INDEX_RELOCATED_KEY, false);
+
+				_entries.put(entry.filename, entry);
+
+				JSONArray aliases = file.optJSONArray(INDEX_ALIASES_KEY);
+				if(aliases != null && aliases.length() > 0) {
+					HashSet<String> campaignIds = new HashSet<>();
+
+					for(int j = 0; j < aliases.length(); j++) {
+						campaignIds.add(aliases.getString(j));
+					}
+
+					_aliases.put(entry.filename, campaignIds);
+				}
+			}
+
+			return true;
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: unable to read cache index: " + e.getMessage());
+			_entries.clear();
+			_aliases.clear();
+			return false;
+		}
+	}
+
+	// Files may have been removed by the system or the user when they clear app cache
+	private static void pruneMissingFiles() {
+		ArrayList<String> missingFiles = new ArrayList<>();
+
+		for(String filename : _entries.keySet()) {
+			if(!getFile(filename).exists() && !getFile(filename + UnityAdsConstants.CACHE_PARTIAL_FILE_SUFFIX).exists() && !getFile(filename + UnityAdsConstants.CACHE_QUARANTINE_FILE_SUFFIX).exists()) {
+				missingFiles.add(filename);
+			}
+		}
+
+		if(missingFiles.size() > 0) {
+			for(String filename : missingFiles) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: " + filename + " no longer in cache, removing from index");
+				deleteCacheFiles(filename);
+				_entries.remove(filename);
+			}
+
+			save();
+		}
+	}
+
+	private static void scanCacheDirectory(boolean appDirectory) {
+		File[] fileList = _cacheDirectory.listFiles();
+
+		if(fileList == null) {
+			UnityAdsDeviceLog.error("Unity Ads cache: unable to read cache directory");
+			return;
+		}
+
+		for(File cacheFile : fileList) {
+			String name = cacheFile.getName();
+
+			if(appDirectory && !name.startsWith(UnityAdsConstants.UNITY_ADS_LOCALFILE_PREFIX)) continue;
+			if(name.equals(UnityAdsConstants.PENDING_REQUESTS_FILENAME) || name.equals(UnityAdsConstants.PENDING_REQUESTS_LOG_FILENAME) || name.equals(UnityAdsConstants.CACHE_INDEX_FILENAME) || name.equals(UnityAdsConstants.CACHE_DOWNLOAD_QUEUE_FILENAME) || name.equals(UnityAdsConstants.BANDWIDTH_ESTIMATES_FILENAME) || name.equals(UnityAdsConstants.CACHE_STATS_FILENAME) || name.equals(UnityAdsConstants.SHOW_TIMES_FILENAME)) continue;
+
+			// Partial downloads are added to the index when their download is queued again
+			if(name.endsWith(UnityAdsConstants.CACHE_PARTIAL_FILE_SUFFIX) || name.endsWith(UnityAdsConstants.CACHE_JOURNAL_FILE_SUFFIX) || name.endsWith(UnityAdsConstants.CACHE_QUARANTINE_FILE_SUFFIX) || name.endsWith(UnityAdsConstants.CACHE_FASTSTART_FILE_SUFFIX)) continue;
+
+			UnityAdsDeviceLog.debug("Unity Ads cache: adding " + name + " to cache index");
+			_entries.put(name, new Entry(name, null, cacheFile.length(), cacheFile.lastModified(), 0, false));
+		}
+	}
+
+	// Must be called while holding class lock
+	private static void save() {
+		if(_cacheDirectory == null || _savePending) return;
+
+		_savePending = true;
+
+		if(_saveTimer == null) {
+			_saveTimer = new Timer("UnityAdsCacheIndexTimer", true);
+		}
+
+		_saveTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, SAVE_DELAY_MS);
+	}
+
+	// Index is serialized under class lock and written to file outside of it
+	private static void write() {
+		File indexFile;
+		String data;
+
+		synchronized(UnityAdsCacheIndex.class) {
+			_savePending = false;
+			if(_cacheDirectory == null) return;
+
+			indexFile = getIndexFile();
+
+			try {
+				JSONArray files = new JSONArray();
+
+				for(Entry entry : _entries.values()) {
+					JSONObject file = new JSONObject();
+					file.put(INDEX_FILENAME_KEY, entry.filename);
+					file.put(INDEX_SOURCE_KEY, entry.source);
+					file.put(INDEX_SIZE_KEY, entry.size);
+					file.put(INDEX_LAST_USED_KEY, entry.lastUsed);
+					file.put(INDEX_HITS_KEY, entry.hits);
+					file.put(INDEX_VERIFIED_KEY, entry.verified);
+					file.put(INDEX_FASTSTART_CHECKED_KEY, entry.faststartChecked);
+					file.put(INDEX_RELOCATED_KEY, entry.relocated);
+
+					Set<String> aliases = _aliases.get(entry.filename);
+					if(aliases != null) {
+						file.put(INDEX_ALIASES_KEY, new JSONArray(aliases));
+					}
+					files.put(file);
+				}
+
+				JSONObject json = new JSONObject();
+				json.put(INDEX_FILES_KEY, files);
+				data = json.toString();
+			} catch(Exception e) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: unable to serialize cache index: " + e.getMessage());
+				return;
+			}
+		}
+
+		File tempFile = new File(indexFile.getPath() + ".tmp");
+
+		try {
+			FileOutputStream output = new FileOutputStream(tempFile);
+			output.write(data.getBytes("UTF-8"));
+			output.flush();
+			output.close();
+
+			if(!tempFile.renameTo(indexFile)) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: couldn't rename cache index");
+			}
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: unable to write cache index: " + e.getMessage());
+		}
+	}
+}
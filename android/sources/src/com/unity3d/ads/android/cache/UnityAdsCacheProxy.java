@@ -0,0 +1,344 @@
+package com.unity3d.ads.android.cache;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.data.UnityAdsHttpTransport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Minimal HTTP server on the loopback interface that lets the video player play a video while it is
+ * being cached. Bytes are served from the partial cache file as soon as the download has written
+ * them. Requests far ahead of the download, like seeks to the end of the file, are relayed straight
+ * from the network so the player doesn't have to wait for the whole file. If only the beginning of
+ * the video was cached, it is served from the partial file while the rest is downloaded.
+ */
+class UnityAdsCacheProxy {
+	// Requests this far ahead of downloaded bytes are relayed from network instead of waiting
+	private static final long RELAY_DISTANCE_BYTES = 1024 * 1024;
+	// If download doesn't make any progress in this time, rest of the request is relayed from network
+	private static final long DOWNLOAD_STALL_TIMEOUT_MS = 10000;
+	// Download that is only queued gets this long to start before the request is relayed from network
+	private static final long DOWNLOAD_START_GRACE_MS = 1000;
+	private static final long DOWNLOAD_WAIT_INTERVAL_MS = 500;
+
+	private static final HashMap<String, ProxyFile> _files = new HashMap<>();
+	private static ServerSocket _serverSocket = null;
+
+	private static class ProxyFile {
+		public final String source;
+		public final String target;
+		public final long size;
+
+		public ProxyFile(String source, String target, long size) {
+			this.source = source;
+			this.target = target;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Makes target available from the proxy
+	 * @return Local URL of the file or null if proxy could not be started
+	 */
+	public static synchronized String getUrl(String source, String target, long size) {
+		if(!start()) return null;
+
+		String filename = new File(target).getName();
+		_files.put(filename, new ProxyFile(source, target, size));
+
+		return "http://127.0.0.1:" + _serverSocket.getLocalPort() + "/" + filename;
+	}
+
+	private static synchronized ProxyFile getFile(String filename) {
+		return _files.get(filename);
+	}
+
+	/**
+	 * Forgets files of finished playback, their URLs stop working
+	 */
+	public static synchronized void clearFiles() {
+		_files.clear();
+	}
+
+	/**
+	 * @return True if player may read filename through the proxy
+	 */
+	public static synchronized boolean isServing(String filename) {
+		return _files.containsKey(filename);
+	}
+
+	private static boolean start() {
+		if(_serverSocket != null) return true;
+
+		try {
+			_serverSocket = new ServerSocket(0, 8, InetAddress.getByName("127.0.0.1"));
+		} catch(IOException e) {
+			UnityAdsDeviceLog.error("Unity Ads cache: unable to start cache proxy: " + e.getMessage());
+			return false;
+		}
+
+		final ServerSocket serverSocket = _serverSocket;
+
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while(true) {
+					try {
+						Socket socket = serverSocket.accept();
+						Thread requestThread = new Thread(new ProxyRequest(socket));
+						requestThread.setName("UnityAdsCacheProxyRequest");
+						requestThread.start();
+					} catch(IOException e) {
+						UnityAdsDeviceLog.error("Unity Ads cache: cache proxy stopped: " + e.getMessage());
+						break;
+					}
+				}
+
+				synchronized(UnityAdsCacheProxy.class) {
+					_serverSocket = null;
+				}
+			}
+		});
+
+		thread.setName("UnityAdsCacheProxy");
+		thread.start();
+
+		UnityAdsDeviceLog.debug("Unity Ads cache: cache proxy listening on port " + _serverSocket.getLocalPort());
+		return true;
+	}
+
+	private static class ProxyRequest implements Runnable {
+		private final Socket _socket;
+		private RandomAccessFile _file = null;
+
+		public ProxyRequest(Socket socket) {
+			_socket = socket;
+		}
+
+		@Override
+		public void run() {
+			try {
+				InputStream input = _socket.getInputStream();
+				OutputStream output = _socket.getOutputStream();
+
+				String requestLine = readLine(input);
+				if(requestLine == null) return;
+
+				String range = null;
+				String header;
+
+				while((header = readLine(input)) != null && header.length() > 0) {
+					if(header.toLowerCase(Locale.US).startsWith("range:")) {
+						range = header.substring(6).trim();
+					}
+				}
+
+				String[] request = requestLine.split(" ");
+				ProxyFile file = request.length >= 2 ? getFile(request[1].substring(request[1].lastIndexOf('/') + 1)) : null;
+
+				if(file == null) {
+					output.write("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes("US-ASCII"));
+					return;
+				}
+
+				long start = 0;
+				long end = file.size - 1;
+
+				if(range != null && range.startsWith("bytes=")) {
+					String[] bounds = range.substring(6).split("-", -1);
+
+					if(bounds[0].length() == 0) {
+						start = Math.max(0, file.size - Long.parseLong(bounds[1]));
+					} else {
+						start = Long.parseLong(bounds[0]);
+
+						if(bounds.length > 1 && bounds[1].length() > 0) {
+							end = Math.min(end, Long.parseLong(bounds[1]));
+						}
+					}
+
+					if(start > end) {
+						output.write(("HTTP/1.1 416 Requested Range Not Satisfiable\r\nContent-Range: bytes */" + file.size + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes("US-ASCII"));
+						return;
+					}
+				}
+
+				StringBuilder response = new StringBuilder();
+				response.append(range != null ? "HTTP/1.1 206 Partial Content\r\n" : "HTTP/1.1 200 OK\r\n");
+				response.append("Content-Type: video/mp4\r\n");
+				response.append("Accept-Ranges: bytes\r\n");
+				response.append("Content-Length: ").append(end - start + 1).append("\r\n");
+				if(range != null) {
+					response.append("Content-Range: bytes ").append(start).append("-").append(end).append("/").append(file.size).append("\r\n");
+				}
+				response.append("Connection: close\r\n\r\n");
+				output.write(response.toString().getBytes("US-ASCII"));
+
+				if(!"HEAD".equals(request[0])) {
+					serve(file, start, end, output);
+				}
+
+				output.flush();
+			} catch(Exception e) {
+				// Player closes connections whenever it seeks so this is business as usual
+				UnityAdsDeviceLog.debug("Unity Ads cache: cache proxy request ended: " + e.getMessage());
+			} finally {
+				try {
+					if(_file != null) _file.close();
+					_socket.close();
+				} catch(IOException e) {
+					UnityAdsDeviceLog.debug("Unity Ads cache: unable to close cache proxy request: " + e.getMessage());
+				}
+			}
+		}
+
+		private void serve(ProxyFile file, long start, long end, OutputStream output) throws IOException, InterruptedException {
+			long position = start;
+			long lastProgressTime = System.currentTimeMillis();
+			// Beginning of the video may have been cached earlier without a download running now
+			long prefixBytes = getPrefixBytes(file);
+
+			while(position <= end) {
+				File targetFile = new File(file.target);
+				if(targetFile.exists() && targetFile.length() == file.size) {
+					// Download has finished, partial file opened earlier is now the target file
+					if(_file == null) {
+						_file = new RandomAccessFile(targetFile, "r");
+					}
+
+					copyFile(position, end, output);
+					return;
+				}
+
+				UnityAdsDownloadJob job = UnityAdsDownloadManager.getJob(file.target);
+				long available = Math.max(prefixBytes, job != null ? job.getAvailableBytes() : 0);
+
+				if(position < available && openPartialFile(file)) {
+					long last = Math.min(end, available - 1);
+					copyFile(position, last, output);
+					position = last + 1;
+					lastProgressTime = System.currentTimeMillis();
+					continue;
+				}
+
+				if(job == null) break;
+
+				// Queued download may wait behind other downloads, so it's not waited for long
+				long timeout = UnityAdsDownloadManager.isRunning(file.target) ? DOWNLOAD_STALL_TIMEOUT_MS : DOWNLOAD_START_GRACE_MS;
+				if(position - available > RELAY_DISTANCE_BYTES || System.currentTimeMillis() - lastProgressTime > timeout) break;
+
+				job.waitForBytes(position, DOWNLOAD_WAIT_INTERVAL_MS);
+			}
+
+			if(position <= end) {
+				relay(file, position, end, output);
+			}
+		}
+
+		private static long getPrefixBytes(ProxyFile file) {
+			UnityAdsDownloadJournal journal = UnityAdsDownloadJournal.load(file.target, file.source, file.size);
+			if(journal == null || journal.isSegmented()) return 0;
+
+			return Math.min(journal.getDownloadedBytes(), UnityAdsDownloadJournal.getPartialFile(file.target).length());
+		}
+
+		private boolean openPartialFile(ProxyFile file) {
+			if(_file != null) return true;
+
+			try {
+				// Once opened, file can still be read after download has renamed it
+				_file = new RandomAccessFile(UnityAdsDownloadJournal.getPartialFile(file.target), "r");
+				return true;
+			} catch(FileNotFoundException e) {
+				return false;
+			}
+		}
+
+		private void copyFile(long first, long last, OutputStream output) throws IOException {
+			ByteBuffer buffer = UnityAdsBufferPool.acquire();
+			byte[] data = buffer.array();
+			long position = first;
+
+			try {
+				_file.seek(position);
+
+				while(position <= last) {
+					int count = _file.read(data, 0, (int)Math.min(data.length, last - position + 1));
+					if(count == -1) throw new IOException("Unexpected end of cache file at " + position);
+
+					output.write(data, 0, count);
+					position += count;
+				}
+			} finally {
+				UnityAdsBufferPool.release(buffer);
+			}
+		}
+
+		private void relay(ProxyFile file, long first, long last, OutputStream output) throws IOException {
+			UnityAdsDeviceLog.debug("Unity Ads cache: relaying bytes " + first + "-" + last + " of " + file.source + " from network");
+
+			HttpURLConnection conn = UnityAdsHttpTransport.open(file.source, 30000, 30000);
+			conn.setRequestProperty("Range", "bytes=" + first + "-" + last);
+
+			ByteBuffer buffer = UnityAdsBufferPool.acquire();
+			byte[] data = buffer.array();
+			boolean completed = false;
+
+			try {
+				conn.connect();
+
+				InputStream input = conn.getInputStream();
+				long skip = conn.getResponseCode() == HttpURLConnection.HTTP_PARTIAL ? 0 : first;
+				long remaining = last - first + 1;
+
+				while(skip > 0) {
+					long skipped = input.skip(skip);
+					if(skipped <= 0) throw new IOException("Unable to skip to " + first);
+					skip -= skipped;
+				}
+
+				while(remaining > 0) {
+					int count = input.read(data, 0, (int)Math.min(data.length, remaining));
+					if(count == -1) throw new IOException("Unexpected end of " + file.source);
+
+					output.write(data, 0, count);
+					remaining -= count;
+				}
+
+				input.close();
+				// Full response was read only partly when server ignored the range
+				completed = conn.getResponseCode() == HttpURLConnection.HTTP_PARTIAL;
+			} finally {
+				UnityAdsBufferPool.release(buffer);
+				UnityAdsHttpTransport.release(conn, completed);
+			}
+		}
+
+		private static String readLine(InputStream input) throws IOException {
+			ByteArrayOutputStream line = new ByteArrayOutputStream();
+			int c;
+
+			while((c = input.read()) != -1) {
+				if(c == '\n') break;
+				if(c != '\r') line.write(c);
+			}
+
+			if(c == -1 && line.size() == 0) return null;
+
+			return line.toString("US-ASCII");
+		}
+	}
+}
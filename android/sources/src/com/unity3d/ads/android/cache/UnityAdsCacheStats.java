@@ -0,0 +1,247 @@
+package com.unity3d.ads.android.cache;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.UnityAdsUtils;
+import com.unity3d.ads.android.properties.UnityAdsConstants;
+import com.unity3d.ads.android.properties.UnityAdsProperties;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * How well video cache works: how many videos were shown from cache and how many streamed, how many
+ * downloaded bytes were deleted without ever being shown and how long it takes to get a video cached.
+ * Stats are kept for the current session and in total over all sessions. Total stats are written on
+ * a background thread a while after they change, so that frequent events are written together.
+ */
+public class UnityAdsCacheStats {
+	private static final String STATS_CACHED_SHOWS_KEY = "cachedShows";
+	private static final String STATS_STREAMED_SHOWS_KEY = "streamedShows";
+	private static final String STATS_DOWNLOADED_BYTES_KEY = "downloadedBytes";
+	private static final String STATS_WASTED_BYTES_KEY = "wastedBytes";
+	private static final String STATS_CACHED_FILES_KEY = "cachedFiles";
+	private static final String STATS_TIME_TO_CACHED_KEY = "timeToCached";
+	// Stats are not urgent, losing the last few seconds of them when app is killed is fine
+	private static final long SAVE_DELAY_MS = 5000;
+
+	private static final Object _lock = new Object();
+	private static final UnityAdsCacheStats _session = new UnityAdsCacheStats();
+	private static UnityAdsCacheStats _total = null;
+	private static boolean _savePending = false;
+	private static Timer _saveTimer = null;
+
+	private int _cachedShows = 0;
+	private int _streamedShows = 0;
+	private long _downloadedBytes = 0;
+	private long _wastedBytes = 0;
+	private int _cachedFiles = 0;
+	private long _timeToCached = 0;
+
+	private UnityAdsCacheStats() {
+	}
+
+	private UnityAdsCacheStats(UnityAdsCacheStats stats) {
+		_cachedShows = stats._cachedShows;
+		_streamedShows = stats._streamedShows;
+		_downloadedBytes = stats._downloadedBytes;
+		_wastedBytes = stats._wastedBytes;
+		_cachedFiles = stats._cachedFiles;
+		_timeToCached = stats._timeToCached;
+	}
+
+	/**
+	 * @return Stats since app was started
+	 */
+	public static UnityAdsCacheStats getSessionStats() {
+		synchronized(_lock) {
+			return new UnityAdsCacheStats(_session);
+		}
+	}
+
+	/**
+	 * @return Stats of all sessions, including the current one
+	 */
+	public static UnityAdsCacheStats getTotalStats() {
+		synchronized(_lock) {
+			return new UnityAdsCacheStats(getTotal());
+		}
+	}
+
+	public int getCachedShows() {
+		return _cachedShows;
+	}
+
+	public int getStreamedShows() {
+		return _streamedShows;
+	}
+
+	/**
+	 * @return Share of shows played from cache between 0 and 1, 0 if nothing has been shown
+	 */
+	public double getHitRate() {
+		int shows = _cachedShows + _streamedShows;
+		return shows > 0 ? (double)_cachedShows / shows : 0;
+	}
+
+	/**
+	 * @return Bytes written to cache by downloads, including downloads that didn't finish
+	 */
+	public long getDownloadedBytes() {
+		return _downloadedBytes;
+	}
+
+	/**
+	 * @return Bytes of cached videos that were evicted or deleted before they were ever shown
+	 */
+	public long getWastedBytes() {
+		return _wastedBytes;
+	}
+
+	public int getCachedFiles() {
+		return _cachedFiles;
+	}
+
+	/**
+	 * @return Average time in milliseconds from queuing a download to the video being cached, 0 if nothing has been cached
+	 */
+	public long getAverageTimeToCached() {
+		return _cachedFiles > 0 ? _timeToCached / _cachedFiles : 0;
+	}
+
+	@Override
+	public String toString() {
+		return "cachedShows=" + _cachedShows + ", streamedShows=" + _streamedShows + ", downloadedBytes=" + _downloadedBytes +
+			", wastedBytes=" + _wastedBytes + ", cachedFiles=" + _cachedFiles + ", averageTimeToCached=" + getAverageTimeToCached();
+	}
+
+	static void videoShown(boolean cached) {
+		synchronized(_lock) {
+			for(UnityAdsCacheStats stats : new UnityAdsCacheStats[] { _session, getTotal() }) {
+				if(cached) {
+					stats._cachedShows++;
+				} else {
+					stats._streamedShows++;
+				}
+			}
+
+			save();
+		}
+	}
+
+	static void bytesDownloaded(long bytes) {
+		if(bytes <= 0) return;
+
+		synchronized(_lock) {
+			_session._downloadedBytes += bytes;
+			getTotal()._downloadedBytes += bytes;
+			save();
+		}
+	}
+
+	static void bytesWasted(long bytes) {
+		if(bytes <= 0) return;
+
+		synchronized(_lock) {
+			_session._wastedBytes += bytes;
+			getTotal()._wastedBytes += bytes;
+			save();
+		}
+	}
+
+	static void fileCached(long timeToCached) {
+		synchronized(_lock) {
+			for(UnityAdsCacheStats stats : new UnityAdsCacheStats[] { _session, getTotal() }) {
+				stats._cachedFiles++;
+				stats._timeToCached += Math.max(0, timeToCached);
+			}
+
+			save();
+		}
+	}
+
+	private static File getStatsFile() {
+		if(UnityAdsProperties.APPLICATION_CONTEXT == null) return null;
+
+		return new File(UnityAdsProperties.APPLICATION_CONTEXT.getFilesDir(), UnityAdsConstants.CACHE_STATS_FILENAME);
+	}
+
+	// Must be called while holding _lock
+	private static UnityAdsCacheStats getTotal() {
+		if(_total != null) return _total;
+
+		_total = new UnityAdsCacheStats();
+		File file = getStatsFile();
+		if(file == null || !file.exists()) return _total;
+
+		try {
+			JSONObject json = new JSONObject(UnityAdsUtils.readFile(file, false));
+			_total._cachedShows = json.optInt(STATS_CACHED_SHOWS_KEY, 0);
+			_total._streamedShows = json.optInt(STATS_STREAMED_SHOWS_KEY, 0);
+			_total._downloadedBytes = json.optLong(STATS_DOWNLOADED_BYTES_KEY, 0);
+			_total._wastedBytes = json.optLong(STATS_WASTED_BYTES_KEY, 0);
+			_total._cachedFiles = json.optInt(STATS_CACHED_FILES_KEY, 0);
+			_total._timeToCached = json.optLong(STATS_TIME_TO_CACHED_KEY, 0);
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: unable to read cache stats: " + e.getMessage());
+		}
+
+		return _total;
+	}
+
+	// Must be called while holding _lock
+	private static void save() {
+		if(_savePending) return;
+
+		_savePending = true;
+
+		if(_saveTimer == null) {
+			_saveTimer = new Timer("UnityAdsCacheStatsTimer", true);
+		}
+
+		_saveTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, SAVE_DELAY_MS);
+	}
+
+	private static void write() {
+		UnityAdsCacheStats total;
+
+		synchronized(_lock) {
+			_savePending = false;
+			total = new UnityAdsCacheStats(getTotal());
+		}
+
+		File file = getStatsFile();
+		if(file == null) return;
+
+		File tempFile = new File(file.getPath() + ".tmp");
+
+		try {
+			JSONObject json = new JSONObject();
+			json.put(STATS_CACHED_SHOWS_KEY, total._cachedShows);
+			json.put(STATS_STREAMED_SHOWS_KEY, total._streamedShows);
+			json.put(STATS_DOWNLOADED_BYTES_KEY, total._downloadedBytes);
+			json.put(STATS_WASTED_BYTES_KEY, total._wastedBytes);
+			json.put(STATS_CACHED_FILES_KEY, total._cachedFiles);
+			json.put(STATS_TIME_TO_CACHED_KEY, total._timeToCached);
+
+			FileOutputStream output = new FileOutputStream(tempFile);
+			output.write(json.toString().getBytes("UTF-8"));
+			output.flush();
+			output.close();
+
+			if(!tempFile.renameTo(file)) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: couldn't rename cache stats file");
+			}
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: unable to write cache stats: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package com.unity3d.ads.android.cache;
+
+import com.unity3d.ads.android.campaign.UnityAdsCampaign;
+import com.unity3d.ads.android.properties.UnityAdsProperties;
+
+/**
+ * Caches only the next video on metered networks, low battery, slow networks or when storage is
+ * running out, and more videos ahead on unmetered networks, most when device is charging.
+ * Campaigns the backend forces to be cached are cached whenever network is not metered. Of the
+ * next few campaigns that are not cached in full, only the first seconds are cached.
+ */
+public class UnityAdsDefaultPrefetchPolicy implements IUnityAdsPrefetchPolicy {
+	private static final long LOW_STORAGE_BYTES = 50 * 1024 * 1024;
+	private static final int LOW_BATTERY_LEVEL = 15;
+	private static final int UNMETERED_PREFETCH_WINDOW = 2;
+	private static final int CHARGING_PREFETCH_WINDOW = 4;
+	private static final int METERED_PREFIX_WINDOW = 3;
+	private static final int UNMETERED_PREFIX_WINDOW = 6;
+
+	@Override
+	public boolean shouldPrefetch(UnityAdsCampaign campaign, int position, UnityAdsPrefetchConditions conditions) {
+		// Not even the next video fits without filling up the device
+		if(conditions.getFreeSpace() < LOW_STORAGE_BYTES) return false;
+
+		if(position < getPrefetchWindow(conditions)) return true;
+
+		return campaign.forceCacheVideo() && !conditions.isMetered();
+	}
+
+	@Override
+	public boolean shouldPrefetchPrefix(UnityAdsCampaign campaign, int position, UnityAdsPrefetchConditions conditions) {
+		if(conditions.getFreeSpace() < LOW_STORAGE_BYTES) return false;
+
+		// Prefixes are only a few seconds of video so they are worth it even on metered networks
+		return position < (conditions.isMetered() ? METERED_PREFIX_WINDOW : UNMETERED_PREFIX_WINDOW);
+	}
+
+	/**
+	 * @return Number of campaigns from the start of ad plan to cache
+	 */
+	protected int getPrefetchWindow(UnityAdsPrefetchConditions conditions) {
+		if(conditions.isMetered()) return 1;
+
+		boolean lowBattery = conditions.getBatteryLevel() >= 0 && conditions.getBatteryLevel() < LOW_BATTERY_LEVEL;
+		if(lowBattery && !conditions.isCharging()) return 1;
+
+		boolean slowNetwork = conditions.getThroughput() > 0 && conditions.getThroughput() < UnityAdsProperties.SLOW_NETWORK_SPEED;
+		if(slowNetwork) return 1;
+
+		return conditions.isCharging() ? CHARGING_PREFETCH_WINDOW : UNMETERED_PREFETCH_WINDOW;
+	}
+}
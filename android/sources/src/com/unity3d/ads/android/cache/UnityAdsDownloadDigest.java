@@ -0,0 +1,107 @@
+package com.unity3d.ads.android.cache;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Locale;
+
+/**
+ * Digest of a downloaded file that is computed while the file is being written. Bytes have to be
+ * given in file order, the position tells how many bytes from the beginning of the file the digest
+ * already covers.
+ */
+class UnityAdsDownloadDigest {
+	private final MessageDigest _digest;
+	private final String _expectedHash;
+	private long _position = 0;
+
+	private UnityAdsDownloadDigest(MessageDigest digest, String expectedHash) {
+		_digest = digest;
+		_expectedHash = expectedHash;
+	}
+
+	/**
+	 * Creates a digest for verifying a file against a hex encoded hash, algorithm is chosen by the hash length
+	 * @return Digest or null if there's no hash or its algorithm isn't known
+	 */
+	public static UnityAdsDownloadDigest create(String expectedHash) {
+		if(expectedHash == null) return null;
+
+		String algorithm;
+
+		switch(expectedHash.length()) {
+			case 32:
+				algorithm = "MD5";
+				break;
+			case 64:
+				algorithm = "SHA-256";
+				break;
+			default:
+				UnityAdsDeviceLog.debug("Unity Ads cache: unknown hash " + expectedHash + ", not verifying download");
+				return null;
+		}
+
+		try {
+			return new UnityAdsDownloadDigest(MessageDigest.getInstance(algorithm), expectedHash.toLowerCase(Locale.US));
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: " + algorithm + " not available, not verifying download");
+			return null;
+		}
+	}
+
+	public long getPosition() {
+		return _position;
+	}
+
+	public void update(byte[] data, int offset, int count) {
+		_digest.update(data, offset, count);
+		_position += count;
+	}
+
+	/**
+	 * Reads bytes that were written to file without passing through the digest, like the beginning of
+	 * a resumed download
+	 */
+	public void update(File file, long end) throws IOException {
+		if(_position >= end) return;
+
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		ByteBuffer buffer = UnityAdsBufferPool.acquire();
+		byte[] data = buffer.array();
+
+		try {
+			input.seek(_position);
+
+			while(_position < end) {
+				int count = input.read(data, 0, (int)Math.min(data.length, end - _position));
+				if(count == -1) throw new IOException("Unexpected end of " + file.getName() + " at " + _position);
+
+				update(data, 0, count);
+			}
+		} finally {
+			UnityAdsBufferPool.release(buffer);
+			input.close();
+		}
+	}
+
+	public boolean matches() {
+		byte[] hash = _digest.digest();
+		StringBuilder hex = new StringBuilder();
+
+		for(byte b : hash) {
+			hex.append(String.format(Locale.US, "%02x", b & 0xff));
+		}
+
+		boolean matches = hex.toString().equals(_expectedHash);
+
+		if(!matches) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: hash " + hex + " doesn't match expected " + _expectedHash);
+		}
+
+		return matches;
+	}
+}
@@ -0,0 +1,144 @@
+package com.unity3d.ads.android.cache;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+class UnityAdsDownloadJob implements Comparable<UnityAdsDownloadJob> {
+	private final String _source;
+	private final String _target;
+	private final String _host;
+	private final long _expectedSize;
+	private final String _expectedHash;
+	private final long _sequence;
+	private final long _queuedTime = SystemClock.elapsedRealtime();
+	// Priority can be raised while job is running, download thread reads it after every chunk
+	private volatile int _priority;
+	private int _attempts = 0;
+	private volatile boolean _cancelled = false;
+	private volatile boolean _prefixOnly = false;
+	private long _availableBytes = 0;
+	private boolean _finished = false;
+
+	public UnityAdsDownloadJob(String source, String target, long expectedSize, String expectedHash, int priority, long sequence) {
+		_source = source;
+		_target = target;
+		_expectedSize = expectedSize;
+		_expectedHash = expectedHash;
+		_priority = priority;
+		_sequence = sequence;
+
+		String host = Uri.parse(source).getHost();
+		_host = host != null ? host : "";
+	}
+
+	public String getSource() {
+		return _source;
+	}
+
+	public String getTarget() {
+		return _target;
+	}
+
+	public String getHost() {
+		return _host;
+	}
+
+	public long getExpectedSize() {
+		return _expectedSize;
+	}
+
+	public String getExpectedHash() {
+		return _expectedHash;
+	}
+
+	public long getQueuedTime() {
+		return _queuedTime;
+	}
+
+	public int getPriority() {
+		return _priority;
+	}
+
+	public void setPriority(int priority) {
+		_priority = priority;
+	}
+
+	public int getAttempts() {
+		return _attempts;
+	}
+
+	public void attemptFailed() {
+		_attempts++;
+	}
+
+	public void setAttempts(int attempts) {
+		_attempts = attempts;
+	}
+
+	// Prefix jobs stop after the first seconds of the video, job can be turned into a full download while running
+	public boolean isPrefixOnly() {
+		return _prefixOnly;
+	}
+
+	public void setPrefixOnly(boolean prefixOnly) {
+		_prefixOnly = prefixOnly;
+	}
+
+	public boolean isCancelled() {
+		return _cancelled;
+	}
+
+	public void cancel() {
+		_cancelled = true;
+	}
+
+	// Bytes from the beginning of the file that have been written to the partial file
+	public synchronized long getAvailableBytes() {
+		return _availableBytes;
+	}
+
+	public synchronized void setAvailableBytes(long availableBytes) {
+		_availableBytes = availableBytes;
+		notifyAll();
+	}
+
+	public synchronized boolean isFinished() {
+		return _finished;
+	}
+
+	public synchronized void finish() {
+		_finished = true;
+		notifyAll();
+	}
+
+	/**
+	 * Waits until more than position bytes are available or the download ends
+	 * @return True if byte at position is available
+	 */
+	public synchronized boolean waitForBytes(long position, long timeout) throws InterruptedException {
+		if(_availableBytes <= position && !_finished) {
+			wait(timeout);
+		}
+
+		return _availableBytes > position;
+	}
+
+	// Lower priority value is downloaded first, jobs with equal priority are downloaded in the order they were queued
+	@Override
+	public int compareTo(UnityAdsDownloadJob other) {
+		if(_priority != other._priority) {
+			return _priority < other._priority ? -1 : 1;
+		}
+
+		if(_sequence != other._sequence) {
+			return _sequence < other._sequence ? -1 : 1;
+		}
+
+		return 0;
+	}
+
+	@Override
+	public String toString() {
+		return "source: " + _source + ", target: " + _target + ", priority: " + _priority;
+	}
+}
@@ -0,0 +1,161 @@
+package com.unity3d.ads.android.cache;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.UnityAdsUtils;
+import com.unity3d.ads.android.properties.UnityAdsConstants;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Persistent copy of the download queue. Queue is written to cache directory whenever it changes so
+ * that downloads can be restarted right after app is started again, without waiting for a new ad plan.
+ * Writing is done on a background thread shortly after the change, so a burst of changes is written
+ * only once.
+ */
+class UnityAdsDownloadJobStore {
+	private static final String STORE_JOBS_KEY = "jobs";
+	private static final String STORE_SOURCE_KEY = "source";
+	private static final String STORE_FILENAME_KEY = "filename";
+	private static final String STORE_EXPECTED_SIZE_KEY = "expectedSize";
+	private static final String STORE_EXPECTED_HASH_KEY = "expectedHash";
+	private static final String STORE_PRIORITY_KEY = "priority";
+	private static final String STORE_ATTEMPTS_KEY = "attempts";
+	private static final String STORE_PREFIX_ONLY_KEY = "prefixOnly";
+	private static final long SAVE_DELAY_MS = 500;
+
+	private static File _storeFile = null;
+
+	private static final Object _saveLock = new Object();
+	private static ArrayList<StoredJob> _unsavedJobs = null;
+	private static Timer _saveTimer = null;
+
+	public static class StoredJob {
+		public final String source;
+		public final String filename;
+		public final long expectedSize;
+		public final String expectedHash;
+		public final int priority;
+		public final int attempts;
+		public final boolean prefixOnly;
+
+		public StoredJob(String source, String filename, long expectedSize, String expectedHash, int priority, int attempts, boolean prefixOnly) {
+			this.source = source;
+			this.filename = filename;
+			this.expectedSize = expectedSize;
+			this.expectedHash = expectedHash;
+			this.priority = priority;
+			this.attempts = attempts;
+			this.prefixOnly = prefixOnly;
+		}
+	}
+
+	public static synchronized void setCacheDirectory(File cacheDirectory) {
+		_storeFile = new File(cacheDirectory, UnityAdsConstants.CACHE_DOWNLOAD_QUEUE_FILENAME);
+	}
+
+	public static synchronized ArrayList<StoredJob> load() {
+		ArrayList<StoredJob> jobs = new ArrayList<>();
+		if(_storeFile == null || !_storeFile.exists()) return jobs;
+
+		try {
+			JSONArray jobsJson = new JSONObject(UnityAdsUtils.readFile(_storeFile, false)).getJSONArray(STORE_JOBS_KEY);
+
+			for(int i = 0; i < jobsJson.length(); i++) {
+				JSONObject job = jobsJson.getJSONObject(i);
+
+				jobs.add(new StoredJob(
+					job.getString(STORE_SOURCE_KEY),
+					job.getString(STORE_FILENAME_KEY),
+					job.getLong(STORE_EXPECTED_SIZE_KEY),
+					job.optString(STORE_EXPECTED_HASH_KEY, null),
+					job.getInt(STORE_PRIORITY_KEY),
+					job.getInt(STORE_ATTEMPTS_KEY),
+					job.optBoolean(STORE_PREFIX_ONLY_KEY, false)));
+			}
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: unable to read download queue: " + e.getMessage());
+		}
+
+		return jobs;
+	}
+
+	/**
+	 * Takes a snapshot of jobs and writes it on background thread. Only the latest snapshot is written
+	 * if there are several changes before the write.
+	 */
+	public static void saveLater(Collection<UnityAdsDownloadJob> jobs) {
+		ArrayList<StoredJob> snapshot = new ArrayList<>();
+
+		for(UnityAdsDownloadJob job : jobs) {
+			snapshot.add(new StoredJob(job.getSource(), new File(job.getTarget()).getName(), job.getExpectedSize(), job.getExpectedHash(), job.getPriority(), job.getAttempts(), job.isPrefixOnly()));
+		}
+
+		synchronized(_saveLock) {
+			boolean scheduled = _unsavedJobs != null;
+			_unsavedJobs = snapshot;
+			if(scheduled) return;
+
+			if(_saveTimer == null) {
+				_saveTimer = new Timer("UnityAdsDownloadQueueTimer", true);
+			}
+
+			_saveTimer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					ArrayList<StoredJob> unsavedJobs;
+
+					synchronized(_saveLock) {
+						unsavedJobs = _unsavedJobs;
+						_unsavedJobs = null;
+					}
+
+					save(unsavedJobs);
+				}
+			}, SAVE_DELAY_MS);
+		}
+	}
+
+	private static synchronized void save(ArrayList<StoredJob> jobs) {
+		if(_storeFile == null || jobs == null) return;
+
+		File tempFile = new File(_storeFile.getPath() + ".tmp");
+
+		try {
+			JSONArray jobsJson = new JSONArray();
+
+			for(StoredJob job : jobs) {
+				JSONObject jobJson = new JSONObject();
+				jobJson.put(STORE_SOURCE_KEY, job.source);
+				jobJson.put(STORE_FILENAME_KEY, job.filename);
+				jobJson.put(STORE_EXPECTED_SIZE_KEY, job.expectedSize);
+				jobJson.put(STORE_EXPECTED_HASH_KEY, job.expectedHash);
+				jobJson.put(STORE_PRIORITY_KEY, job.priority);
+				jobJson.put(STORE_ATTEMPTS_KEY, job.attempts);
+				jobJson.put(STORE_PREFIX_ONLY_KEY, job.prefixOnly);
+				jobsJson.put(jobJson);
+			}
+
+			JSONObject json = new JSONObject();
+			json.put(STORE_JOBS_KEY, jobsJson);
+
+			FileOutputStream output = new FileOutputStream(tempFile);
+			output.write(json.toString().getBytes("UTF-8"));
+			output.flush();
+			output.close();
+
+			if(!tempFile.renameTo(_storeFile)) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: couldn't rename download queue");
+			}
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: unable to write download queue: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package com.unity3d.ads.android.cache;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.UnityAdsUtils;
+import com.unity3d.ads.android.properties.UnityAdsConstants;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+
+/**
+ * Progress journal of a partially downloaded cache file. The journal is stored next to the partial
+ * file and tells where the download can be resumed from and which server validator (ETag or
+ * Last-Modified) the partial bytes belong to.
+ */
+class UnityAdsDownloadJournal {
+	private static final String JOURNAL_SOURCE_KEY = "source";
+	private static final String JOURNAL_EXPECTED_SIZE_KEY = "expectedSize";
+	private static final String JOURNAL_VALIDATOR_KEY = "validator";
+	private static final String JOURNAL_DOWNLOADED_KEY = "downloaded";
+	private static final String JOURNAL_SEGMENTS_KEY = "segments";
+
+	private final File _journalFile;
+	private final String _source;
+	private final long _expectedSize;
+	private String _validator = null;
+	private long _downloadedBytes = 0;
+	private ArrayList<Segment> _segments = null;
+
+	/**
+	 * Byte range [start, end) of a segmented download, position is the first byte not yet written
+	 */
+	public static class Segment {
+		public final long start;
+		public final long end;
+		public volatile long position;
+
+		public Segment(long start, long end, long position) {
+			this.start = start;
+			this.end = end;
+			this.position = position;
+		}
+
+		public boolean isComplete() {
+			return position >= end;
+		}
+	}
+
+	public UnityAdsDownloadJournal(String target, String source, long expectedSize) {
+		_journalFile = getJournalFile(target);
+		_source = source;
+		_expectedSize = expectedSize;
+	}
+
+	public static File getPartialFile(String target) {
+		return new File(target + UnityAdsConstants.CACHE_PARTIAL_FILE_SUFFIX);
+	}
+
+	public static File getJournalFile(String target) {
+		return new File(target + UnityAdsConstants.CACHE_JOURNAL_FILE_SUFFIX);
+	}
+
+	/**
+	 * Reads the journal of a partial download of target from source
+	 * @return Journal if a partial download of the same source and size exists, otherwise null
+	 */
+	public static UnityAdsDownloadJournal load(String target, String source, long expectedSize) {
+		File journalFile = getJournalFile(target);
+		if(!journalFile.exists()) return null;
+
+		try {
+			JSONObject json = new JSONObject(UnityAdsUtils.readFile(journalFile, false));
+
+			if(!source.equals(json.getString(JOURNAL_SOURCE_KEY)) || expectedSize != json.getLong(JOURNAL_EXPECTED_SIZE_KEY)) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: journal of " + target + " belongs to another download");
+				return null;
+			}
+
+			UnityAdsDownloadJournal journal = new UnityAdsDownloadJournal(target, source, expectedSize);
+			journal._validator = json.optString(JOURNAL_VALIDATOR_KEY, null);
+			journal._downloadedBytes = json.getLong(JOURNAL_DOWNLOADED_KEY);
+
+			if(json.has(JOURNAL_SEGMENTS_KEY)) {
+				JSONArray segments = json.getJSONArray(JOURNAL_SEGMENTS_KEY);
+				journal._segments = new ArrayList<>();
+
+				for(int i = 0; i < segments.length(); i++) {
+					JSONArray segment = segments.getJSONArray(i);
+					journal._segments.add(new Segment(segment.getLong(0), segment.getLong(1), segment.getLong(2)));
+				}
+			}
+
+			return journal;
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: unable to read journal " + journalFile.getName() + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	public String getValidator() {
+		return _validator;
+	}
+
+	public void setValidator(String validator) {
+		_validator = validator;
+	}
+
+	public long getDownloadedBytes() {
+		return _downloadedBytes;
+	}
+
+	public void setDownloadedBytes(long downloadedBytes) {
+		_downloadedBytes = downloadedBytes;
+	}
+
+	public boolean isSegmented() {
+		return _segments != null;
+	}
+
+	public ArrayList<Segment> getSegments() {
+		return _segments;
+	}
+
+	public void setSegments(ArrayList<Segment> segments) {
+		_segments = segments;
+	}
+
+	public synchronized boolean save() {
+		File tempFile = new File(_journalFile.getPath() + ".tmp");
+
+		try {
+			JSONObject json = new JSONObject();
+			json.put(JOURNAL_SOURCE_KEY, _source);
+			json.put(JOURNAL_EXPECTED_SIZE_KEY, _expectedSize);
+			json.put(JOURNAL_VALIDATOR_KEY, _validator);
+			json.put(JOURNAL_DOWNLOADED_KEY, _downloadedBytes);
+
+			if(_segments != null) {
+				JSONArray segments = new JSONArray();
+
+				for(Segment segment : _segments) {
+					JSONArray segmentJson = new JSONArray();
+					segmentJson.put(segment.start);
+					segmentJson.put(segment.end);
+					segmentJson.put(segment.position);
+					segments.put(segmentJson);
+				}
+
+				json.put(JOURNAL_SEGMENTS_KEY, segments);
+			}
+
+			// Write and rename so that a crash never leaves a half written journal behind
+			FileOutputStream output = new FileOutputStream(tempFile);
+			output.write(json.toString().getBytes("UTF-8"));
+			output.flush();
+			output.close();
+
+			return tempFile.renameTo(_journalFile);
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: unable to write journal " + _journalFile.getName() + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	public void delete() {
+		if(_journalFile.exists() && !_journalFile.delete()) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: couldn't delete journal " + _journalFile.getName());
+		}
+	}
+}
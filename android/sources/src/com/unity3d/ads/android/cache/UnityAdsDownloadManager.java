@@ -0,0 +1,448 @@
+package com.unity3d.ads.android.cache;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.data.UnityAdsBandwidthEstimator;
+import com.unity3d.ads.android.properties.UnityAdsProperties;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+class UnityAdsDownloadManager {
+	private static final Object _lock = new Object();
+	private static final PriorityQueue<UnityAdsDownloadJob> _pendingJobs = new PriorityQueue<>();
+	private static final HashMap<String, UnityAdsDownloadJob> _activeJobs = new HashMap<>();
+	private static final HashMap<String, Integer> _activeHosts = new HashMap<>();
+	// Failed jobs waiting for their next attempt
+	private static final HashMap<String, UnityAdsDownloadJob> _retryJobs = new HashMap<>();
+	private static final Random _random = new Random();
+	private static ExecutorService _executor = null;
+	private static Timer _retryTimer = null;
+	private static long _jobSequence = 0;
+
+	public static void download(String source, String target, long expectedSize, String expectedHash, int priority) {
+		queue(source, target, expectedSize, expectedHash, priority, false);
+	}
+
+	/**
+	 * Downloads only the beginning of target so that its playback can start from cache. Partial file
+	 * is kept and a later full download of target continues from it.
+	 */
+	public static void downloadPrefix(String source, String target, long expectedSize, String expectedHash, int priority) {
+		queue(source, target, expectedSize, expectedHash, priority, true);
+	}
+
+	private static void queue(String source, String target, long expectedSize, String expectedHash, int priority, boolean prefixOnly) {
+		if(source == null || target == null) return;
+
+		synchronized(_lock) {
+			UnityAdsDownloadJob activeJob = _activeJobs.get(target);
+			if(activeJob != null && !activeJob.isCancelled()) {
+				updatePrefixOnly(activeJob, prefixOnly);
+
+				// Running download is throttled by its priority, so a file that is now streamed gets full speed
+				activeJob.setPriority(Math.min(priority, activeJob.getPriority()));
+				persistJobs();
+				return;
+			}
+
+			for(UnityAdsDownloadJob job : _pendingJobs) {
+				if(job.getTarget().equals(target)) {
+					updatePrefixOnly(job, prefixOnly);
+
+					// Already queued, only move it forward if it is now needed sooner
+					if(priority < job.getPriority()) {
+						_pendingJobs.remove(job);
+						job.setPriority(priority);
+						_pendingJobs.add(job);
+					}
+
+					persistJobs();
+					return;
+				}
+			}
+
+			// File is needed now, don't wait for the backoff of the previous failure to run out
+			UnityAdsDownloadJob retryJob = _retryJobs.remove(target);
+			if(retryJob != null) {
+				retryJob.setPriority(Math.min(priority, retryJob.getPriority()));
+				updatePrefixOnly(retryJob, prefixOnly);
+
+				_pendingJobs.add(retryJob);
+				startPendingJobs();
+				persistJobs();
+				return;
+			}
+
+			UnityAdsDownloadJob job = new UnityAdsDownloadJob(source, target, expectedSize, expectedHash, priority, _jobSequence++);
+			job.setPrefixOnly(prefixOnly);
+			UnityAdsDeviceLog.debug("Unity Ads cache: queuing " + (prefixOnly ? "prefix download " : "download ") + job);
+			_pendingJobs.add(job);
+
+			startPendingJobs();
+			persistJobs();
+		}
+	}
+
+	// Full download wins over prefix, except that background downloads can be cut down to a prefix
+	private static void updatePrefixOnly(UnityAdsDownloadJob job, boolean prefixOnly) {
+		if(!prefixOnly) {
+			job.setPrefixOnly(false);
+		} else if(job.getPriority() >= 0) {
+			job.setPrefixOnly(true);
+		}
+	}
+
+	/**
+	 * Queues downloads that were left unfinished when app was last closed
+	 */
+	public static void restore(String cacheDirectory, ArrayList<UnityAdsDownloadJobStore.StoredJob> storedJobs) {
+		synchronized(_lock) {
+			for(UnityAdsDownloadJobStore.StoredJob storedJob : storedJobs) {
+				String target = cacheDirectory + "/" + storedJob.filename;
+				if(_activeJobs.containsKey(target) || _retryJobs.containsKey(target)) continue;
+
+				boolean pending = false;
+				for(UnityAdsDownloadJob job : _pendingJobs) {
+					if(job.getTarget().equals(target)) {
+						pending = true;
+						break;
+					}
+				}
+
+				if(pending) continue;
+
+				// Next and streamed campaign of last session are not that anymore, restored jobs run in the background
+				int priority = Math.max(0, storedJob.priority);
+
+				UnityAdsDownloadJob job = new UnityAdsDownloadJob(storedJob.source, target, storedJob.expectedSize, storedJob.expectedHash, priority, _jobSequence++);
+				job.setAttempts(storedJob.attempts);
+				job.setPrefixOnly(storedJob.prefixOnly);
+				UnityAdsDeviceLog.debug("Unity Ads cache: restoring download " + job);
+				_pendingJobs.add(job);
+			}
+
+			startPendingJobs();
+			persistJobs();
+		}
+	}
+
+	public static boolean isDownloading(String target) {
+		if(target == null) return false;
+
+		synchronized(_lock) {
+			UnityAdsDownloadJob activeJob = _activeJobs.get(target);
+			if(activeJob != null && !activeJob.isCancelled()) return true;
+
+			for(UnityAdsDownloadJob job : _pendingJobs) {
+				if(job.getTarget().equals(target)) return true;
+			}
+
+			if(_retryJobs.containsKey(target)) return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return True if download of target is running now, not just queued or waiting for retry
+	 */
+	public static boolean isRunning(String target) {
+		if(target == null) return false;
+
+		synchronized(_lock) {
+			UnityAdsDownloadJob activeJob = _activeJobs.get(target);
+			return activeJob != null && !activeJob.isCancelled();
+		}
+	}
+
+	/**
+	 * @return Running or queued download job of target, null if target is not being downloaded
+	 */
+	public static UnityAdsDownloadJob getJob(String target) {
+		if(target == null) return null;
+
+		synchronized(_lock) {
+			UnityAdsDownloadJob activeJob = _activeJobs.get(target);
+			if(activeJob != null && !activeJob.isCancelled()) return activeJob;
+
+			for(UnityAdsDownloadJob job : _pendingJobs) {
+				if(job.getTarget().equals(target)) return job;
+			}
+
+			UnityAdsDownloadJob retryJob = _retryJobs.get(target);
+			if(retryJob != null) return retryJob;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Stops download of target if it was queued in the background. Downloads of the next campaign and
+	 * the streamed campaign are kept. Partial file is kept so that download can continue later.
+	 */
+	public static void cancelBackgroundDownload(String target) {
+		if(target == null) return;
+
+		synchronized(_lock) {
+			UnityAdsDownloadJob activeJob = _activeJobs.get(target);
+			if(activeJob != null && activeJob.getPriority() >= 0) {
+				activeJob.cancel();
+			}
+
+			for(UnityAdsDownloadJob job : _pendingJobs) {
+				if(job.getTarget().equals(target)) {
+					if(job.getPriority() >= 0) {
+						_pendingJobs.remove(job);
+						job.cancel();
+						job.finish();
+					}
+
+					break;
+				}
+			}
+
+			UnityAdsDownloadJob retryJob = _retryJobs.get(target);
+			if(retryJob != null && retryJob.getPriority() >= 0) {
+				_retryJobs.remove(target);
+				retryJob.cancel();
+				retryJob.finish();
+			}
+
+			persistJobs();
+		}
+	}
+
+	public static void stopAllDownloads() {
+		synchronized(_lock) {
+			_pendingJobs.clear();
+
+			for(UnityAdsDownloadJob job : _activeJobs.values()) {
+				job.cancel();
+			}
+
+			for(UnityAdsDownloadJob job : _retryJobs.values()) {
+				job.cancel();
+				job.finish();
+			}
+
+			_retryJobs.clear();
+			persistJobs();
+		}
+	}
+
+	/**
+	 * Stops downloads of files other than targets. Downloads of targets keep running and their partial
+	 * files and retry state are kept.
+	 */
+	public static void stopOtherDownloads(Set<String> targets) {
+		synchronized(_lock) {
+			Iterator<UnityAdsDownloadJob> pendingJobs = _pendingJobs.iterator();
+			while(pendingJobs.hasNext()) {
+				UnityAdsDownloadJob job = pendingJobs.next();
+				if(targets.contains(job.getTarget())) continue;
+
+				pendingJobs.remove();
+				job.cancel();
+				job.finish();
+			}
+
+			for(UnityAdsDownloadJob job : _activeJobs.values()) {
+				if(!targets.contains(job.getTarget())) {
+					job.cancel();
+				}
+			}
+
+			Iterator<UnityAdsDownloadJob> retryJobs = _retryJobs.values().iterator();
+			while(retryJobs.hasNext()) {
+				UnityAdsDownloadJob job = retryJobs.next();
+				if(targets.contains(job.getTarget())) continue;
+
+				retryJobs.remove();
+				job.cancel();
+				job.finish();
+			}
+
+			persistJobs();
+		}
+	}
+
+	/**
+	 * Called by download task when it ends
+	 * @param retry True if download failed with an error that may go away, like a network error
+	 */
+	static void downloadFinished(UnityAdsDownloadJob job, boolean retry) {
+		synchronized(_lock) {
+			if(_activeJobs.get(job.getTarget()) == job) {
+				_activeJobs.remove(job.getTarget());
+			}
+
+			Integer count = _activeHosts.get(job.getHost());
+			if(count != null && count > 1) {
+				_activeHosts.put(job.getHost(), count - 1);
+			} else {
+				_activeHosts.remove(job.getHost());
+			}
+
+			if(retry && !job.isCancelled() && job.getAttempts() + 1 < UnityAdsProperties.MAX_DOWNLOAD_ATTEMPTS) {
+				job.attemptFailed();
+				scheduleRetry(job);
+			} else {
+				if(retry) {
+					UnityAdsDeviceLog.debug("Unity Ads cache: giving up download " + job + " after " + (job.getAttempts() + 1) + " attempts");
+				}
+
+				job.finish();
+			}
+
+			startPendingJobs();
+			persistJobs();
+		}
+	}
+
+	// Must be called while holding _lock
+	private static void persistJobs() {
+		ArrayList<UnityAdsDownloadJob> jobs = new ArrayList<>();
+
+		for(UnityAdsDownloadJob job : _activeJobs.values()) {
+			if(!job.isCancelled()) jobs.add(job);
+		}
+
+		jobs.addAll(_pendingJobs);
+		jobs.addAll(_retryJobs.values());
+
+		UnityAdsDownloadJobStore.saveLater(jobs);
+	}
+
+	// Must be called while holding _lock
+	private static void scheduleRetry(final UnityAdsDownloadJob job) {
+		// Exponential backoff with full jitter so that many failed downloads don't all retry at the same moment
+		long maxDelay = Math.min(UnityAdsProperties.DOWNLOAD_RETRY_MAX_DELAY_MS, UnityAdsProperties.DOWNLOAD_RETRY_BASE_DELAY_MS << Math.min(job.getAttempts(), 16));
+		long delay = (long)(_random.nextDouble() * maxDelay);
+
+		UnityAdsDeviceLog.debug("Unity Ads cache: retrying download " + job + " in " + delay + "ms, attempt " + (job.getAttempts() + 1));
+		_retryJobs.put(job.getTarget(), job);
+
+		if(_retryTimer == null) {
+			_retryTimer = new Timer("UnityAdsCacheRetryTimer", true);
+		}
+
+		_retryTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				synchronized(_lock) {
+					// Job may have been stopped or already started again
+					if(_retryJobs.get(job.getTarget()) != job) return;
+
+					_retryJobs.remove(job.getTarget());
+					_pendingJobs.add(job);
+					startPendingJobs();
+				}
+			}
+		}, delay);
+	}
+
+	// Must be called while holding _lock
+	private static void startPendingJobs() {
+		ArrayList<UnityAdsDownloadJob> deferred = null;
+
+		int maxDownloads = getMaxConcurrentDownloads();
+		preemptForStreamingJobs(maxDownloads);
+
+		while(_activeJobs.size() < maxDownloads && _pendingJobs.size() > 0) {
+			UnityAdsDownloadJob job = _pendingJobs.poll();
+			Integer hostCount = _activeHosts.get(job.getHost());
+
+			// Wait for host slot or for a stopped download of the same file to finish
+			if((hostCount != null && hostCount >= UnityAdsProperties.MAX_CONCURRENT_DOWNLOADS_PER_HOST) || _activeJobs.containsKey(job.getTarget())) {
+				if(deferred == null) deferred = new ArrayList<>();
+				deferred.add(job);
+				continue;
+			}
+
+			_activeJobs.put(job.getTarget(), job);
+			_activeHosts.put(job.getHost(), hostCount != null ? hostCount + 1 : 1);
+			getExecutor().execute(new UnityAdsDownloadTask(job));
+		}
+
+		if(deferred != null) {
+			_pendingJobs.addAll(deferred);
+		}
+	}
+
+	/**
+	 * Background downloads are paused during playback but keep their download and host slots, so a
+	 * streamed video that has no free slot would wait behind them. Such background download is stopped
+	 * and queued again, it continues from its partial file when its turn comes.
+	 * Must be called while holding _lock.
+	 */
+	private static void preemptForStreamingJobs(int maxDownloads) {
+		for(UnityAdsDownloadJob job : new ArrayList<>(_pendingJobs)) {
+			if(job.getPriority() > UnityAdsCache.PRIORITY_STREAMING_CAMPAIGN || _activeJobs.containsKey(job.getTarget())) continue;
+
+			Integer hostCount = _activeHosts.get(job.getHost());
+			boolean hostFull = hostCount != null && hostCount >= UnityAdsProperties.MAX_CONCURRENT_DOWNLOADS_PER_HOST;
+			if(_activeJobs.size() < maxDownloads && !hostFull) continue;
+
+			UnityAdsDownloadJob preempted = null;
+			boolean stopping = false;
+
+			for(UnityAdsDownloadJob activeJob : _activeJobs.values()) {
+				if(hostFull && !activeJob.getHost().equals(job.getHost())) continue;
+
+				// A stopped download is already freeing its slot
+				if(activeJob.isCancelled()) {
+					stopping = true;
+					break;
+				}
+
+				if(activeJob.getPriority() >= 0 && (preempted == null || activeJob.compareTo(preempted) > 0)) {
+					preempted = activeJob;
+				}
+			}
+
+			if(stopping || preempted == null) continue;
+
+			UnityAdsDeviceLog.debug("Unity Ads cache: stopping background download " + preempted + " for streamed video");
+			preempted.cancel();
+
+			UnityAdsDownloadJob requeued = new UnityAdsDownloadJob(preempted.getSource(), preempted.getTarget(), preempted.getExpectedSize(), preempted.getExpectedHash(), preempted.getPriority(), _jobSequence++);
+			requeued.setAttempts(preempted.getAttempts());
+			requeued.setPrefixOnly(preempted.isPrefixOnly());
+			_pendingJobs.add(requeued);
+		}
+	}
+
+	// On a slow network parallel downloads only delay the file that is needed first
+	private static int getMaxConcurrentDownloads() {
+		long speed = UnityAdsBandwidthEstimator.getEstimate();
+		if(speed > 0 && speed < UnityAdsProperties.SLOW_NETWORK_SPEED) return 1;
+
+		return UnityAdsProperties.MAX_CONCURRENT_DOWNLOADS;
+	}
+
+	private static ExecutorService getExecutor() {
+		if(_executor == null) {
+			_executor = Executors.newFixedThreadPool(UnityAdsProperties.MAX_CONCURRENT_DOWNLOADS, new ThreadFactory() {
+				private int _threadCount = 0;
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable);
+					thread.setName("UnityAdsCacheThread-" + _threadCount++);
+					return thread;
+				}
+			});
+		}
+
+		return _executor;
+	}
+}
@@ -0,0 +1,380 @@
+package com.unity3d.ads.android.cache;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.data.UnityAdsHttpTransport;
+import com.unity3d.ads.android.data.UnityAdsBandwidthEstimator;
+import com.unity3d.ads.android.data.UnityAdsDevice;
+import com.unity3d.ads.android.properties.UnityAdsConstants;
+import com.unity3d.ads.android.properties.UnityAdsProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+class UnityAdsDownloadTask implements Runnable {
+	// How often the journal is updated while downloading
+	private static final long JOURNAL_SAVE_INTERVAL_BYTES = 256 * 1024;
+
+	private final UnityAdsDownloadJob _job;
+
+	public UnityAdsDownloadTask(UnityAdsDownloadJob job) {
+		_job = job;
+	}
+
+	@Override
+	public void run() {
+		Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+		boolean retry = false;
+
+		try {
+			retry = downloadFile(_job.getSource(), _job.getTarget());
+		} finally {
+			UnityAdsDownloadManager.downloadFinished(_job, retry);
+		}
+	}
+
+	/**
+	 * @return True if download failed in a way that is worth retrying later, like a network error
+	 */
+	private boolean downloadFile(String source, String target) {
+		if(_job.isCancelled() || source == null || target == null) return false;
+
+		if (!UnityAdsDevice.isActiveNetworkConnected()) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: download postponed, no internet connection available");
+			return true;
+		}
+
+		File partialFile = UnityAdsDownloadJournal.getPartialFile(target);
+		UnityAdsDownloadJournal journal = UnityAdsDownloadJournal.load(target, source, _job.getExpectedSize());
+		long offset = 0;
+
+		if(journal != null && journal.isSegmented() && partialFile.exists()) {
+			return downloadSegmented(partialFile, journal, null);
+		} else if(journal != null && partialFile.exists()) {
+			// Only trust bytes that the journal has seen written
+			offset = Math.min(journal.getDownloadedBytes(), partialFile.length());
+		} else {
+			journal = new UnityAdsDownloadJournal(target, source, _job.getExpectedSize());
+		}
+
+		// Prefix may already be there from an earlier run
+		if(_job.isPrefixOnly() && offset > 0 && isPrefixComplete(partialFile, offset)) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: prefix of " + target + " already cached");
+			return false;
+		}
+
+		HttpURLConnection conn = null;
+		boolean completed = false;
+
+		try {
+			long startTime = SystemClock.elapsedRealtime();
+			boolean throttled = UnityAdsDownloadThrottle.isThrottled(_job);
+
+			conn = UnityAdsHttpTransport.open(source, 30000, 30000);
+
+			if(offset > 0) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: resuming download of " + source + " from byte " + offset);
+				conn.setRequestProperty("Range", "bytes=" + offset + "-");
+
+				if(journal.getValidator() != null) {
+					conn.setRequestProperty("If-Range", journal.getValidator());
+				}
+			} else {
+				UnityAdsDeviceLog.debug("Unity Ads cache: start downloading " + source + " to " + target);
+			}
+
+			conn.connect();
+
+			int responseCode = conn.getResponseCode();
+
+			if(responseCode == HttpURLConnection.HTTP_PARTIAL && offset > 0 && isContentRangeFrom(conn.getHeaderField("Content-Range"), offset)) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: server accepted resume of " + source);
+			} else if(responseCode == HttpURLConnection.HTTP_OK) {
+				if(offset > 0) {
+					UnityAdsDeviceLog.debug("Unity Ads cache: server sent full file of " + source + ", restarting download");
+				}
+
+				offset = 0;
+			} else {
+				if(responseCode == 416) {
+					// Partial file doesn't match the file on server anymore
+					deletePartialDownload(partialFile, journal);
+				}
+
+				throw new HttpStatusException(responseCode);
+			}
+
+			journal.setValidator(getValidator(conn));
+
+			if(offset == 0 && !_job.isPrefixOnly() && UnityAdsSegmentedDownload.isSupported(conn, _job.getExpectedSize())) {
+				journal.setSegments(UnityAdsSegmentedDownload.createSegments(_job.getExpectedSize()));
+				journal.save();
+
+				// Segmented download owns the connection from now on
+				HttpURLConnection firstConnection = conn;
+				conn = null;
+				return downloadSegmented(partialFile, journal, firstConnection);
+			}
+
+			journal.setDownloadedBytes(offset);
+			journal.save();
+
+			// Bytes of a resumed download have to go through the digest before the new ones
+			UnityAdsDownloadDigest digest = UnityAdsDownloadDigest.create(_job.getExpectedHash());
+			if(digest != null) {
+				digest.update(partialFile, offset);
+			}
+
+			RandomAccessFile output = null;
+			InputStream input = null;
+			ByteBuffer buffer = null;
+			long total = 0;
+			long unsavedBytes = 0;
+			long prefixEnd = UnityAdsMp4Prefix.PREFIX_UNKNOWN;
+			boolean prefixCached = false;
+			int count;
+
+			try {
+				output = new RandomAccessFile(partialFile, "rw");
+				output.setLength(offset);
+				_job.setAvailableBytes(offset);
+
+				FileChannel channel = output.getChannel();
+				channel.position(offset);
+
+				// Response is read straight into a pooled buffer and written to file from there without further copies
+				input = conn.getInputStream();
+				buffer = UnityAdsBufferPool.acquire();
+				byte data[] = buffer.array();
+
+				while(!_job.isCancelled() && (count = input.read(data, 0, data.length)) != -1) {
+					buffer.clear();
+					buffer.limit(count);
+
+					while(buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+
+					if(digest != null) {
+						digest.update(data, 0, count);
+					}
+
+					total += count;
+					unsavedBytes += count;
+					_job.setAvailableBytes(offset + total);
+
+					if(unsavedBytes >= JOURNAL_SAVE_INTERVAL_BYTES) {
+						journal.setDownloadedBytes(offset + total);
+						journal.save();
+						unsavedBytes = 0;
+					}
+
+					UnityAdsDownloadThrottle.throttle(_job, count);
+
+					if(_job.isPrefixOnly()) {
+						if(prefixEnd == UnityAdsMp4Prefix.PREFIX_UNKNOWN) {
+							prefixEnd = UnityAdsMp4Prefix.findPrefixEnd(partialFile, offset + total, _job.getExpectedSize(), UnityAdsProperties.PREFIX_CACHE_SECONDS);
+						}
+
+						if(prefixEnd == UnityAdsMp4Prefix.PREFIX_UNSUPPORTED || (prefixEnd != UnityAdsMp4Prefix.PREFIX_UNKNOWN && offset + total >= prefixEnd)) {
+							prefixCached = true;
+							break;
+						}
+					}
+				}
+			} finally {
+				UnityAdsBufferPool.release(buffer);
+
+				if(output != null) {
+					output.close();
+				}
+
+				if(input != null) {
+					input.close();
+				}
+
+				journal.setDownloadedBytes(offset + total);
+				journal.save();
+				UnityAdsCacheStats.bytesDownloaded(total);
+			}
+
+			// Response was read to the end only if loop wasn't stopped early
+			completed = !_job.isCancelled() && !prefixCached;
+
+			if(_job.isCancelled()) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: downloading of " + source + " stopped at " + (offset + total) + " bytes, keeping partial file");
+				return false;
+			}
+
+			if(prefixCached) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: cached prefix of " + (offset + total) + " bytes of " + source);
+
+				// Full download was asked for just when prefix was finished, continue it as a retry
+				return !_job.isPrefixOnly();
+			}
+
+			long duration = SystemClock.elapsedRealtime() - startTime;
+
+			UnityAdsDeviceLog.debug("Unity Ads cache: File " + target + " of " + total + " bytes downloaded in " + duration + "ms");
+
+			if(!throttled && !UnityAdsDownloadThrottle.isThrottled(_job)) {
+				UnityAdsBandwidthEstimator.addSample(total, duration);
+			}
+
+			promotePartialFile(partialFile, new File(target), journal, digest);
+			return false;
+		} catch (HttpStatusException e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: downloading " + source + " to " + target + " failed with response " + e.getResponseCode());
+			return e.isRetryable();
+		} catch (Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: Exception when downloading " + source + " to " + target + ": " + e.getMessage());
+			return !_job.isCancelled();
+		} finally {
+			UnityAdsHttpTransport.release(conn, completed);
+		}
+	}
+
+	private boolean isPrefixComplete(File partialFile, long available) {
+		long prefixEnd = UnityAdsMp4Prefix.findPrefixEnd(partialFile, available, _job.getExpectedSize(), UnityAdsProperties.PREFIX_CACHE_SECONDS);
+		return prefixEnd == UnityAdsMp4Prefix.PREFIX_UNSUPPORTED || (prefixEnd != UnityAdsMp4Prefix.PREFIX_UNKNOWN && available >= prefixEnd);
+	}
+
+	private boolean downloadSegmented(File partialFile, UnityAdsDownloadJournal journal, HttpURLConnection firstConnection) {
+		String source = _job.getSource();
+		String target = _job.getTarget();
+		UnityAdsDownloadDigest digest = UnityAdsDownloadDigest.create(_job.getExpectedHash());
+		UnityAdsSegmentedDownload download = new UnityAdsSegmentedDownload(_job, journal, partialFile, digest);
+
+		try {
+			long startTime = SystemClock.elapsedRealtime();
+			boolean throttled = UnityAdsDownloadThrottle.isThrottled(_job);
+
+			if(!download.download(firstConnection)) {
+				if(download.isFileChanged()) {
+					// Segments of the old file can't be mixed with the new one, start again from the beginning
+					UnityAdsDeviceLog.debug("Unity Ads cache: " + source + " has changed on server, restarting download");
+					deletePartialDownload(partialFile, journal);
+					return true;
+				}
+
+				UnityAdsDeviceLog.debug("Unity Ads cache: segmented download of " + source + " not finished, keeping partial file");
+				return !_job.isCancelled();
+			}
+
+			long duration = SystemClock.elapsedRealtime() - startTime;
+			long total = download.getDownloadedBytes();
+
+			UnityAdsDeviceLog.debug("Unity Ads cache: File " + target + " of " + total + " bytes downloaded in " + duration + "ms");
+
+			if(!throttled && !UnityAdsDownloadThrottle.isThrottled(_job)) {
+				UnityAdsBandwidthEstimator.addSample(total, duration);
+			}
+
+			if(digest != null) {
+				digest.update(partialFile, _job.getExpectedSize());
+			}
+
+			promotePartialFile(partialFile, new File(target), journal, digest);
+			return false;
+		} catch (Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: Exception when downloading " + source + " to " + target + ": " + e.getMessage());
+			return !_job.isCancelled();
+		} finally {
+			UnityAdsCacheStats.bytesDownloaded(download.getDownloadedBytes());
+		}
+	}
+
+	private void promotePartialFile(File partialFile, File targetFile, UnityAdsDownloadJournal journal, UnityAdsDownloadDigest digest) {
+		long expectedSize = _job.getExpectedSize();
+
+		if(expectedSize != -1 && partialFile.length() != expectedSize) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: " + targetFile.getName() + " size " + partialFile.length() + " doesn't match expected size " + expectedSize + ", deleting");
+			deletePartialDownload(partialFile, journal);
+			return;
+		}
+
+		if(digest != null && (digest.getPosition() != partialFile.length() || !digest.matches())) {
+			quarantinePartialFile(partialFile, targetFile, journal);
+			return;
+		}
+
+		if(partialFile.renameTo(targetFile)) {
+			journal.delete();
+			UnityAdsCacheIndex.fileDownloaded(targetFile.getName(), targetFile.length(), digest != null);
+			UnityAdsCacheStats.fileCached(SystemClock.elapsedRealtime() - _job.getQueuedTime());
+
+			UnityAdsCache.optimizeFile(targetFile.getName());
+
+			UnityAdsCache.refreshFileState(targetFile.getName());
+			UnityAdsCacheIndex.evict(UnityAdsProperties.CACHE_SIZE_BUDGET);
+		} else {
+			UnityAdsDeviceLog.debug("Unity Ads cache: couldn't rename " + partialFile.getName() + " to " + targetFile.getName());
+		}
+	}
+
+	// Corrupted file is kept aside so that it's not downloaded again and again, it is removed when evicted from cache
+	private void quarantinePartialFile(File partialFile, File targetFile, UnityAdsDownloadJournal journal) {
+		UnityAdsDeviceLog.error("Unity Ads cache: " + targetFile.getName() + " failed verification, quarantining");
+
+		File quarantineFile = new File(targetFile.getPath() + UnityAdsConstants.CACHE_QUARANTINE_FILE_SUFFIX);
+		if(quarantineFile.exists() && !quarantineFile.delete()) {
+			UnityAdsDeviceLog.debug("Couldn't delete file: " + quarantineFile.getName());
+		}
+
+		if(!partialFile.renameTo(quarantineFile)) {
+			deletePartialDownload(partialFile, journal);
+			return;
+		}
+
+		journal.delete();
+		UnityAdsCache.refreshFileState(targetFile.getName());
+	}
+
+	private void deletePartialDownload(File partialFile, UnityAdsDownloadJournal journal) {
+		if(partialFile.exists() && !partialFile.delete()) {
+			UnityAdsDeviceLog.debug("Couldn't delete file: " + partialFile.getName());
+		}
+
+		journal.delete();
+	}
+
+	// Strong ETag is preferred for If-Range, Last-Modified is used when server doesn't provide one
+	private static String getValidator(HttpURLConnection conn) {
+		String etag = conn.getHeaderField("ETag");
+		if(etag != null && !etag.startsWith("W/")) return etag;
+
+		return conn.getHeaderField("Last-Modified");
+	}
+
+	private static boolean isContentRangeFrom(String contentRange, long offset) {
+		// Content-Range: bytes <first>-<last>/<length>
+		return contentRange != null && contentRange.startsWith("bytes " + offset + "-");
+	}
+
+	@SuppressWarnings("serial")
+	private static class HttpStatusException extends IOException {
+		private final int _responseCode;
+
+		public HttpStatusException(int responseCode) {
+			super("Unexpected response " + responseCode);
+			_responseCode = responseCode;
+		}
+
+		public int getResponseCode() {
+			return _responseCode;
+		}
+
+		// Server errors, timeouts and throttling can go away, other client errors won't
+		public boolean isRetryable() {
+			return _responseCode >= 500 || _responseCode == 408 || _responseCode == 429 || _responseCode == 416;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package com.unity3d.ads.android.cache;
+
+import android.os.SystemClock;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.properties.UnityAdsProperties;
+
+/**
+ * Shares bandwidth between background downloads and video playback. Download loops call throttle
+ * after every chunk, so a paused or rate limited download just reads its socket slower and continues
+ * from where it was when full speed is allowed again.
+ */
+class UnityAdsDownloadThrottle {
+	public enum ThrottleMode {
+		FULL_SPEED,
+		LIMITED,
+		PAUSED
+	}
+
+	private static final long PAUSE_CHECK_INTERVAL_MS = 500;
+
+	private static final Object _lock = new Object();
+	private static ThrottleMode _mode = ThrottleMode.FULL_SPEED;
+	private static long _nextReadTime = 0;
+
+	public static void setMode(ThrottleMode mode) {
+		synchronized(_lock) {
+			if(_mode == mode) return;
+
+			UnityAdsDeviceLog.debug("Unity Ads cache: background downloads " + _mode + " -> " + mode);
+			_mode = mode;
+			_nextReadTime = 0;
+			_lock.notifyAll();
+		}
+	}
+
+	public static ThrottleMode getMode() {
+		synchronized(_lock) {
+			return _mode;
+		}
+	}
+
+	/**
+	 * @return True if job is currently slowed down, so its speed doesn't tell how fast the network is
+	 */
+	public static boolean isThrottled(UnityAdsDownloadJob job) {
+		return !isStreaming(job) && getMode() != ThrottleMode.FULL_SPEED;
+	}
+
+	private static boolean isStreaming(UnityAdsDownloadJob job) {
+		return job.getPriority() <= UnityAdsCache.PRIORITY_STREAMING_CAMPAIGN;
+	}
+
+	/**
+	 * Blocks a download thread after it has read count bytes, for as long as the current mode requires.
+	 * Download of the video that is being streamed is never throttled.
+	 */
+	public static void throttle(UnityAdsDownloadJob job, int count) throws InterruptedException {
+		if(isStreaming(job)) return;
+
+		long delay;
+
+		synchronized(_lock) {
+			// Paused job continues right away if its video starts to be streamed
+			while(_mode == ThrottleMode.PAUSED && !job.isCancelled() && !isStreaming(job)) {
+				_lock.wait(PAUSE_CHECK_INTERVAL_MS);
+			}
+
+			if(_mode != ThrottleMode.LIMITED || job.isCancelled() || isStreaming(job)) return;
+
+			// All background downloads share one budget, each read reserves the next free time slot
+			long now = SystemClock.elapsedRealtime();
+			long readTime = Math.max(now, _nextReadTime);
+			_nextReadTime = readTime + count * 1000L / UnityAdsProperties.DOWNLOAD_PLAYBACK_RATE_LIMIT;
+			delay = readTime - now;
+		}
+
+		if(delay > 0) {
+			Thread.sleep(delay);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package com.unity3d.ads.android.cache;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.properties.UnityAdsConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Moves the moov atom of a cached MP4 file in front of its media data, so that the player doesn't
+ * have to read the end of the file before it can show the first frame. File is written to a
+ * temporary file that replaces the original, so players that have the file open keep reading the
+ * old layout. Chunk offsets in stco and co64 atoms are moved by the size of moov.
+ */
+class UnityAdsFaststart {
+	private static final int ATOM_HEADER_SIZE = 8;
+	// Relocation reads and writes the whole file once, larger files are left as they are
+	private static final long MAX_FILE_SIZE = 64 * 1024 * 1024;
+	private static final long MAX_MOOV_SIZE = 4 * 1024 * 1024;
+
+	// Checking failed and can be tried again later
+	public static final int NOT_CHECKED = 0;
+	// File was checked and left as it was
+	public static final int UNCHANGED = 1;
+	// File was replaced with one that has moov in front
+	public static final int RELOCATED = 2;
+
+	/**
+	 * Checks atom order of file and relocates moov if needed
+	 * @return NOT_CHECKED, UNCHANGED or RELOCATED
+	 */
+	public static int process(File file) {
+		RandomAccessFile input = null;
+
+		try {
+			input = new RandomAccessFile(file, "r");
+			long fileSize = input.length();
+			long position = 0;
+			long mdatStart = -1;
+			long moovStart = -1;
+			long moovSize = 0;
+
+			while(position + ATOM_HEADER_SIZE <= fileSize) {
+				input.seek(position);
+				long size = input.readInt() & 0xffffffffL;
+				int type = input.readInt();
+
+				if(size == 1) {
+					size = input.readLong();
+				} else if(size == 0) {
+					size = fileSize - position;
+				}
+
+				if(size < ATOM_HEADER_SIZE || position + size > fileSize) {
+					UnityAdsDeviceLog.debug("Unity Ads cache: invalid atom at " + position + " in " + file.getName() + ", not relocating moov");
+					return UNCHANGED;
+				}
+
+				if(type == atom("mdat") && mdatStart == -1) {
+					mdatStart = position;
+				} else if(type == atom("moov")) {
+					moovStart = position;
+					moovSize = size;
+					break;
+				}
+
+				position += size;
+			}
+
+			if(moovStart == -1 || mdatStart == -1 || moovStart < mdatStart) return UNCHANGED;
+
+			if(fileSize > MAX_FILE_SIZE || moovSize > MAX_MOOV_SIZE) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: " + file.getName() + " is too large for moving moov to front");
+				return UNCHANGED;
+			}
+
+			ByteBuffer moov = ByteBuffer.allocate((int)moovSize);
+			while(moov.hasRemaining()) {
+				if(input.getChannel().read(moov, moovStart + moov.position()) == -1) throw new IOException("Unexpected end of moov");
+			}
+			moov.flip();
+
+			if(!patchChunkOffsets(moov, 0, (int)moovSize, mdatStart, moovStart, moovSize)) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: chunk offsets of " + file.getName() + " can't be moved, not relocating moov");
+				return UNCHANGED;
+			}
+
+			File tempFile = new File(file.getPath() + UnityAdsConstants.CACHE_FASTSTART_FILE_SUFFIX);
+			RandomAccessFile output = new RandomAccessFile(tempFile, "rw");
+
+			try {
+				output.setLength(0);
+				FileChannel source = input.getChannel();
+				FileChannel target = output.getChannel();
+
+				transfer(source, 0, mdatStart, target);
+				moov.rewind();
+				while(moov.hasRemaining()) {
+					target.write(moov);
+				}
+				transfer(source, mdatStart, moovStart - mdatStart, target);
+				transfer(source, moovStart + moovSize, fileSize - moovStart - moovSize, target);
+			} finally {
+				output.close();
+			}
+
+			if(tempFile.length() != fileSize || !tempFile.renameTo(file)) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: couldn't replace " + file.getName() + " with relocated file");
+				if(!tempFile.delete()) {
+					UnityAdsDeviceLog.debug("Unity Ads cache: couldn't delete " + tempFile.getName());
+				}
+
+				return NOT_CHECKED;
+			}
+
+			UnityAdsDeviceLog.debug("Unity Ads cache: moved moov of " + file.getName() + " to front");
+			return RELOCATED;
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: unable to relocate moov of " + file.getName() + ": " + e.getMessage());
+			return NOT_CHECKED;
+		} finally {
+			if(input != null) {
+				try {
+					input.close();
+				} catch(IOException e) {
+					UnityAdsDeviceLog.debug("Unity Ads cache: unable to close " + file.getName());
+				}
+			}
+		}
+	}
+
+	// Adds moov size to every chunk offset that points between the new and the old place of moov
+	private static boolean patchChunkOffsets(ByteBuffer moov, int start, int end, long mdatStart, long moovStart, long moovSize) {
+		int position = start;
+
+		while(position + ATOM_HEADER_SIZE <= end) {
+			long size = moov.getInt(position) & 0xffffffffL;
+			int type = moov.getInt(position + 4);
+
+			if(size < ATOM_HEADER_SIZE || position + size > end) return false;
+
+			if(type == atom("cmov")) {
+				return false;
+			} else if(type == atom("moov") || type == atom("trak") || type == atom("mdia") || type == atom("minf") || type == atom("stbl")) {
+				if(!patchChunkOffsets(moov, position + ATOM_HEADER_SIZE, position + (int)size, mdatStart, moovStart, moovSize)) return false;
+			} else if(type == atom("stco") || type == atom("co64")) {
+				boolean largeOffsets = type == atom("co64");
+				int entrySize = largeOffsets ? 8 : 4;
+				long count = moov.getInt(position + 12) & 0xffffffffL;
+				int entries = position + 16;
+
+				if(entries + count * entrySize > position + size) return false;
+
+				for(int i = 0; i < count; i++) {
+					int entry = entries + i * entrySize;
+					long offset = largeOffsets ? moov.getLong(entry) : moov.getInt(entry) & 0xffffffffL;
+
+					if(offset >= mdatStart && offset < moovStart) {
+						offset += moovSize;
+					}
+
+					if(largeOffsets) {
+						moov.putLong(entry, offset);
+					} else if(offset > 0xffffffffL) {
+						return false;
+					} else {
+						moov.putInt(entry, (int)offset);
+					}
+				}
+			}
+
+			position += size;
+		}
+
+		return true;
+	}
+
+	private static void transfer(FileChannel source, long position, long count, FileChannel target) throws IOException {
+		long transferred = 0;
+
+		while(transferred < count) {
+			long bytes = source.transferTo(position + transferred, count - transferred, target);
+			if(bytes <= 0) throw new IOException("Unable to copy bytes at " + (position + transferred));
+			transferred += bytes;
+		}
+	}
+
+	private static int atom(String type) {
+		return (type.charAt(0) << 24) | (type.charAt(1) << 16) | (type.charAt(2) << 8) | type.charAt(3);
+	}
+}
@@ -0,0 +1,127 @@
+package com.unity3d.ads.android.cache;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Finds how many bytes from the beginning of an MP4 file are needed to play its first seconds. The
+ * prefix always contains the whole moov atom, so it is only possible when moov is before mdat.
+ */
+class UnityAdsMp4Prefix {
+	// More bytes needed to find the prefix
+	public static final long PREFIX_UNKNOWN = 0;
+	// File can't be played from a prefix
+	public static final long PREFIX_UNSUPPORTED = -1;
+
+	private static final int ATOM_HEADER_SIZE = 8;
+
+	/**
+	 * @param file Partial file
+	 * @param available Bytes written to file from its beginning
+	 * @param fileSize Size of complete file
+	 * @param seconds Seconds of video that should fit in the prefix
+	 * @return End of prefix, PREFIX_UNKNOWN or PREFIX_UNSUPPORTED
+	 */
+	public static long findPrefixEnd(File file, long available, long fileSize, int seconds) {
+		RandomAccessFile input = null;
+
+		try {
+			input = new RandomAccessFile(file, "r");
+			long position = 0;
+
+			while(position + ATOM_HEADER_SIZE <= available) {
+				input.seek(position);
+				long size = input.readInt() & 0xffffffffL;
+				String type = readType(input);
+				long headerSize = ATOM_HEADER_SIZE;
+
+				if(size == 1) {
+					if(position + 16 > available) return PREFIX_UNKNOWN;
+					size = input.readLong();
+					headerSize = 16;
+				} else if(size == 0) {
+					size = fileSize - position;
+				}
+
+				if(size < headerSize) return PREFIX_UNSUPPORTED;
+
+				if(type.equals("mdat")) {
+					UnityAdsDeviceLog.debug("Unity Ads cache: moov of " + file.getName() + " is after media data, can't cache only a prefix");
+					return PREFIX_UNSUPPORTED;
+				}
+
+				if(type.equals("moov")) {
+					long moovEnd = position + size;
+					if(moovEnd > available) return PREFIX_UNKNOWN;
+
+					double duration = readDuration(input, position + headerSize, moovEnd);
+					if(duration <= 0) return Math.min(fileSize, moovEnd);
+
+					long bytesPerSecond = (long)(fileSize / duration);
+					return Math.min(fileSize, moovEnd + seconds * bytesPerSecond);
+				}
+
+				position += size;
+			}
+		} catch(IOException e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: unable to read atoms of " + file.getName() + ": " + e.getMessage());
+			return PREFIX_UNSUPPORTED;
+		} finally {
+			if(input != null) {
+				try {
+					input.close();
+				} catch(IOException e) {
+					UnityAdsDeviceLog.debug("Unity Ads cache: unable to close " + file.getName());
+				}
+			}
+		}
+
+		return PREFIX_UNKNOWN;
+	}
+
+	// Duration of movie in seconds from mvhd atom, 0 if not found
+	private static double readDuration(RandomAccessFile input, long start, long end) throws IOException {
+		long position = start;
+
+		while(position + ATOM_HEADER_SIZE <= end) {
+			input.seek(position);
+			long size = input.readInt() & 0xffffffffL;
+			String type = readType(input);
+
+			if(size < ATOM_HEADER_SIZE) return 0;
+
+			if(type.equals("mvhd")) {
+				int version = input.readUnsignedByte();
+				input.skipBytes(3);
+
+				long timescale;
+				long duration;
+
+				if(version == 1) {
+					input.skipBytes(16);
+					timescale = input.readInt() & 0xffffffffL;
+					duration = input.readLong();
+				} else {
+					input.skipBytes(8);
+					timescale = input.readInt() & 0xffffffffL;
+					duration = input.readInt() & 0xffffffffL;
+				}
+
+				return timescale > 0 ? (double)duration / timescale : 0;
+			}
+
+			position += size;
+		}
+
+		return 0;
+	}
+
+	private static String readType(RandomAccessFile input) throws IOException {
+		byte[] type = new byte[4];
+		input.readFully(type);
+		return new String(type, "US-ASCII");
+	}
+}
@@ -0,0 +1,98 @@
+package com.unity3d.ads.android.cache;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.data.UnityAdsBandwidthEstimator;
+import com.unity3d.ads.android.data.UnityAdsDevice;
+
+import java.io.File;
+
+/**
+ * Device state given to prefetch policy when deciding which videos to cache
+ */
+public class UnityAdsPrefetchConditions {
+	private final boolean _wifi;
+	private final boolean _metered;
+	private final int _networkType;
+	private final boolean _charging;
+	private final int _batteryLevel;
+	private final long _freeSpace;
+	private final long _throughput;
+
+	public UnityAdsPrefetchConditions(boolean wifi, boolean metered, int networkType, boolean charging, int batteryLevel, long freeSpace, long throughput) {
+		_wifi = wifi;
+		_metered = metered;
+		_networkType = networkType;
+		_charging = charging;
+		_batteryLevel = batteryLevel;
+		_freeSpace = freeSpace;
+		_throughput = throughput;
+	}
+
+	static UnityAdsPrefetchConditions getCurrent(String cacheDirectory) {
+		boolean wifi = false;
+		boolean metered = true;
+		int networkType = 0;
+
+		try {
+			wifi = UnityAdsDevice.isUsingWifi();
+			metered = UnityAdsDevice.isActiveNetworkMetered();
+			networkType = wifi ? 0 : UnityAdsDevice.getNetworkType();
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: couldn't read network state: " + e.getMessage());
+		}
+
+		long freeSpace = cacheDirectory != null ? new File(cacheDirectory).getUsableSpace() : 0;
+
+		return new UnityAdsPrefetchConditions(wifi, metered, networkType, UnityAdsDevice.isCharging(),
+			UnityAdsDevice.getBatteryLevel(), freeSpace, UnityAdsBandwidthEstimator.getEstimate());
+	}
+
+	public boolean isWifi() {
+		return _wifi;
+	}
+
+	/**
+	 * @return True if user may pay for the data, like on cellular networks and tethered wifi
+	 */
+	public boolean isMetered() {
+		return _metered;
+	}
+
+	/**
+	 * @return TelephonyManager network type when on cellular network, 0 on wifi
+	 */
+	public int getNetworkType() {
+		return _networkType;
+	}
+
+	public boolean isCharging() {
+		return _charging;
+	}
+
+	/**
+	 * @return Battery level between 0 and 100, -1 if not known
+	 */
+	public int getBatteryLevel() {
+		return _batteryLevel;
+	}
+
+	/**
+	 * @return Free space in cache directory in bytes
+	 */
+	public long getFreeSpace() {
+		return _freeSpace;
+	}
+
+	/**
+	 * @return Estimated throughput of current network in bytes per millisecond, 0 if not known
+	 */
+	public long getThroughput() {
+		return _throughput;
+	}
+
+	@Override
+	public String toString() {
+		return "wifi=" + _wifi + ", metered=" + _metered + ", networkType=" + _networkType + ", charging=" + _charging +
+			", battery=" + _batteryLevel + ", freeSpace=" + _freeSpace + ", throughput=" + _throughput;
+	}
+}
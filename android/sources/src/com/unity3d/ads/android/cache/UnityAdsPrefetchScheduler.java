@@ -0,0 +1,106 @@
+package com.unity3d.ads.android.cache;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.data.UnityAdsHttpTransport;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Runs prefetch and connection warm-up at the times planned from predicted show times, so that
+ * background downloads finish just before the next show instead of competing with the game's own
+ * network traffic all the time. Only the latest plan is kept, scheduling again replaces it.
+ */
+class UnityAdsPrefetchScheduler {
+	private static final int WARM_UP_TIMEOUT_MS = 10000;
+
+	private static final Object _lock = new Object();
+	private static Timer _timer = null;
+	private static TimerTask _prefetchTask = null;
+	private static TimerTask _warmUpTask = null;
+
+	/**
+	 * Runs prefetch of ad plan campaigns after delay
+	 */
+	public static void schedulePrefetch(long delay) {
+		synchronized(_lock) {
+			if(_prefetchTask != null) {
+				_prefetchTask.cancel();
+			}
+
+			_prefetchTask = new TimerTask() {
+				@Override
+				public void run() {
+					UnityAdsCache.prefetchScheduled();
+				}
+			};
+
+			getTimer().schedule(_prefetchTask, Math.max(0, delay));
+		}
+	}
+
+	/**
+	 * Opens a connection to the host of url after delay so that DNS lookup and connection setup are
+	 * done before the video is needed. Connection is left in the keep-alive pool.
+	 */
+	public static void scheduleWarmUp(final String url, long delay) {
+		synchronized(_lock) {
+			if(_warmUpTask != null) {
+				_warmUpTask.cancel();
+			}
+
+			_warmUpTask = new TimerTask() {
+				@Override
+				public void run() {
+					warmUp(url);
+				}
+			};
+
+			getTimer().schedule(_warmUpTask, Math.max(0, delay));
+		}
+	}
+
+	public static void cancel() {
+		synchronized(_lock) {
+			if(_prefetchTask != null) {
+				_prefetchTask.cancel();
+				_prefetchTask = null;
+			}
+
+			if(_warmUpTask != null) {
+				_warmUpTask.cancel();
+				_warmUpTask = null;
+			}
+		}
+	}
+
+	// Must be called while holding _lock
+	private static Timer getTimer() {
+		if(_timer == null) {
+			_timer = new Timer("UnityAdsPrefetchTimer", true);
+		}
+
+		return _timer;
+	}
+
+	private static void warmUp(String url) {
+		try {
+			HttpURLConnection conn = UnityAdsHttpTransport.open(url, WARM_UP_TIMEOUT_MS, WARM_UP_TIMEOUT_MS);
+			conn.setRequestMethod("HEAD");
+
+			int responseCode = conn.getResponseCode();
+
+			// Closing the stream instead of disconnecting returns the connection to the pool
+			InputStream input = responseCode < 400 ? conn.getInputStream() : conn.getErrorStream();
+			if(input != null) {
+				input.close();
+			}
+
+			UnityAdsDeviceLog.debug("Unity Ads cache: warmed up connection to " + url + ", response " + responseCode);
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: connection warm-up to " + url + " failed: " + e.getMessage());
+		}
+	}
+}
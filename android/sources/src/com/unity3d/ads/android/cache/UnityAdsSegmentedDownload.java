@@ -0,0 +1,354 @@
+package com.unity3d.ads.android.cache;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.data.UnityAdsHttpTransport;
+import com.unity3d.ads.android.cache.UnityAdsDownloadJournal.Segment;
+import com.unity3d.ads.android.properties.UnityAdsProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+/**
+ * Downloads one file with several concurrent HTTP Range requests. The file is split into fixed size
+ * segments that are written with positional writes straight into the partial file, so segments can
+ * complete in any order. Number of connections starts low and grows while every added connection
+ * still increases total throughput.
+ */
+class UnityAdsSegmentedDownload {
+	private static final long SEGMENT_SIZE = 1024 * 1024;
+	private static final int INITIAL_CONNECTIONS = 2;
+	private static final long THROUGHPUT_SAMPLE_INTERVAL_MS = 2000;
+	// New connection is kept only if it gives at least this much more throughput
+	private static final float THROUGHPUT_GAIN_THRESHOLD = 1.1f;
+
+	private final UnityAdsDownloadJob _job;
+	private final UnityAdsDownloadJournal _journal;
+	private final File _partialFile;
+	private final UnityAdsDownloadDigest _digest;
+	private final Object _lock = new Object();
+	private final LinkedList<Segment> _pendingSegments = new LinkedList<>();
+	private FileChannel _channel = null;
+
+	private int _activeConnections = 0;
+	private int _targetConnections = INITIAL_CONNECTIONS;
+	private boolean _connectionGrowthStopped = false;
+	private volatile boolean _fileChanged = false;
+	private long _sampleBytes = 0;
+	private long _totalBytes = 0;
+
+	public UnityAdsSegmentedDownload(UnityAdsDownloadJob job, UnityAdsDownloadJournal journal, File partialFile, UnityAdsDownloadDigest digest) {
+		_job = job;
+		_journal = journal;
+		_partialFile = partialFile;
+		_digest = digest;
+	}
+
+	public static boolean isSupported(HttpURLConnection conn, long expectedSize) {
+		return UnityAdsProperties.SEGMENTED_DOWNLOADS_ENABLED &&
+			expectedSize >= UnityAdsProperties.SEGMENTED_DOWNLOAD_MIN_SIZE &&
+			"bytes".equalsIgnoreCase(conn.getHeaderField("Accept-Ranges"));
+	}
+
+	public static ArrayList<Segment> createSegments(long size) {
+		ArrayList<Segment> segments = new ArrayList<>();
+
+		for(long start = 0; start < size; start += SEGMENT_SIZE) {
+			segments.add(new Segment(start, Math.min(start + SEGMENT_SIZE, size), start));
+		}
+
+		return segments;
+	}
+
+	/**
+	 * @return True if server answered an If-Range request with the full file, so the file has changed
+	 * since the partial file was started and the partial file is useless
+	 */
+	public boolean isFileChanged() {
+		return _fileChanged;
+	}
+
+	public long getDownloadedBytes() {
+		synchronized(_lock) {
+			return _totalBytes;
+		}
+	}
+
+	/**
+	 * Downloads all incomplete segments of the journal
+	 * @param firstConnection Optional already opened connection whose response body starts from the beginning of the file
+	 * @return True if all segments were downloaded, false if download was stopped or failed
+	 */
+	public boolean download(HttpURLConnection firstConnection) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(_partialFile, "rw");
+
+		try {
+			file.setLength(_job.getExpectedSize());
+			_channel = file.getChannel();
+
+			synchronized(_lock) {
+				for(Segment segment : _journal.getSegments()) {
+					if(!segment.isComplete()) {
+						_pendingSegments.add(segment);
+					}
+				}
+
+				publishAvailableBytes();
+				UnityAdsDeviceLog.debug("Unity Ads cache: segmented download of " + _job.getSource() + ", " + _pendingSegments.size() + " segments left");
+
+				Segment firstSegment = _pendingSegments.peek();
+				if(firstConnection != null && firstSegment != null && firstSegment.position == 0) {
+					// Response body of the first connection starts from byte 0, use it for the first segment
+					startConnection(_pendingSegments.poll(), firstConnection);
+				} else if(firstConnection != null) {
+					UnityAdsHttpTransport.release(firstConnection, false);
+				}
+
+				while(_activeConnections < _targetConnections && _pendingSegments.size() > 0) {
+					startConnection(null, null);
+				}
+			}
+
+			long sampleStartTime = SystemClock.elapsedRealtime();
+			float previousThroughput = 0;
+
+			while(true) {
+				synchronized(_lock) {
+					if(_activeConnections == 0) break;
+
+					_lock.wait(THROUGHPUT_SAMPLE_INTERVAL_MS);
+
+					long sampleDuration = SystemClock.elapsedRealtime() - sampleStartTime;
+
+					if(sampleDuration >= THROUGHPUT_SAMPLE_INTERVAL_MS) {
+						float throughput = (float)_sampleBytes / sampleDuration;
+						adjustConnections(throughput, previousThroughput);
+
+						previousThroughput = throughput;
+						_sampleBytes = 0;
+						sampleStartTime = SystemClock.elapsedRealtime();
+						_journal.save();
+					}
+				}
+
+				// Digest follows the completed beginning of the file while later segments are still downloading
+				if(_digest != null) {
+					_digest.update(_partialFile, _job.getAvailableBytes());
+				}
+			}
+		} catch(InterruptedException e) {
+			UnityAdsDeviceLog.debug("Unity Ads cache: segmented download interrupted");
+		} finally {
+			_journal.save();
+			file.close();
+		}
+
+		for(Segment segment : _journal.getSegments()) {
+			if(!segment.isComplete()) return false;
+		}
+
+		return true;
+	}
+
+	// Must be called while holding _lock
+	private void adjustConnections(float throughput, float previousThroughput) {
+		if(_connectionGrowthStopped || _pendingSegments.size() == 0) return;
+
+		if(previousThroughput > 0 && throughput < previousThroughput * THROUGHPUT_GAIN_THRESHOLD) {
+			// Last added connection didn't help, bandwidth is saturated
+			_connectionGrowthStopped = true;
+
+			if(_targetConnections > 1) {
+				_targetConnections--;
+			}
+
+			UnityAdsDeviceLog.debug("Unity Ads cache: segmented download settled to " + _targetConnections + " connections at " + Math.round(throughput) + " bytes/ms");
+			return;
+		}
+
+		if(_targetConnections < UnityAdsProperties.MAX_SEGMENT_CONNECTIONS) {
+			_targetConnections++;
+			startConnection(null, null);
+		}
+	}
+
+	// Must be called while holding _lock
+	private void startConnection(Segment segment, HttpURLConnection connection) {
+		_activeConnections++;
+		Thread thread = new Thread(new SegmentWorker(segment, connection));
+		thread.setName("UnityAdsSegmentThread");
+		thread.start();
+	}
+
+	private Segment nextSegment() {
+		synchronized(_lock) {
+			if(_job.isCancelled() || _fileChanged || _activeConnections > _targetConnections) return null;
+
+			return _pendingSegments.poll();
+		}
+	}
+
+	private void segmentFailed(Segment segment) {
+		synchronized(_lock) {
+			_pendingSegments.addFirst(segment);
+
+			// Server or network is not coping with parallel requests, keep remaining connections
+			if(_targetConnections > 1) {
+				_targetConnections--;
+			}
+
+			_connectionGrowthStopped = true;
+		}
+	}
+
+	private void bytesWritten(int count) {
+		synchronized(_lock) {
+			_sampleBytes += count;
+			_totalBytes += count;
+			publishAvailableBytes();
+		}
+	}
+
+	// Segments complete in any order, only the unbroken run of bytes from the beginning of the file can be streamed
+	private void publishAvailableBytes() {
+		long available = 0;
+
+		for(Segment segment : _journal.getSegments()) {
+			available = segment.position;
+			if(!segment.isComplete()) break;
+		}
+
+		if(available > _job.getAvailableBytes()) {
+			_job.setAvailableBytes(available);
+		}
+	}
+
+	private void connectionFinished() {
+		synchronized(_lock) {
+			_activeConnections--;
+			_lock.notifyAll();
+		}
+	}
+
+	private HttpURLConnection openSegmentConnection(Segment segment) throws IOException {
+		HttpURLConnection conn = UnityAdsHttpTransport.open(_job.getSource(), 30000, 30000);
+		conn.setRequestProperty("Range", "bytes=" + segment.position + "-" + (segment.end - 1));
+
+		if(_journal.getValidator() != null) {
+			conn.setRequestProperty("If-Range", _journal.getValidator());
+		}
+
+		conn.connect();
+
+		if(conn.getResponseCode() == HttpURLConnection.HTTP_OK && _journal.getValidator() != null) {
+			UnityAdsHttpTransport.release(conn, false);
+			_fileChanged = true;
+			throw new IOException("File has changed on server");
+		}
+
+		String contentRange = conn.getHeaderField("Content-Range");
+		if(conn.getResponseCode() != HttpURLConnection.HTTP_PARTIAL || contentRange == null || !contentRange.startsWith("bytes " + segment.position + "-")) {
+			UnityAdsHttpTransport.release(conn, false);
+			throw new IOException("Server did not accept range request, response " + conn.getResponseCode());
+		}
+
+		return conn;
+	}
+
+	/**
+	 * @param rangeResponse True if conn is a range response of segment, false if it is the full response of
+	 * the first request of which only the first segment is read
+	 */
+	private void downloadSegment(Segment segment, HttpURLConnection conn, boolean rangeResponse) throws IOException, InterruptedException {
+		InputStream input = conn.getInputStream();
+		ByteBuffer buffer = UnityAdsBufferPool.acquire();
+		byte data[] = buffer.array();
+
+		try {
+			while(!_job.isCancelled() && segment.position < segment.end) {
+				int count = input.read(data, 0, (int)Math.min(data.length, segment.end - segment.position));
+				if(count == -1) {
+					throw new IOException("Segment ended at " + segment.position + ", expected " + segment.end);
+				}
+
+				buffer.clear();
+				buffer.limit(count);
+				long position = segment.position;
+
+				while(buffer.hasRemaining()) {
+					position += _channel.write(buffer, position);
+				}
+
+				segment.position = position;
+				bytesWritten(count);
+				UnityAdsDownloadThrottle.throttle(_job, count);
+			}
+		} finally {
+			UnityAdsBufferPool.release(buffer);
+			input.close();
+			// Range response ends at segment end, so a finished segment leaves the connection reusable. Rest of
+			// a full response is still unread, so its connection can't be reused.
+			UnityAdsHttpTransport.release(conn, rangeResponse && segment.position >= segment.end);
+		}
+	}
+
+	private class SegmentWorker implements Runnable {
+		private Segment _firstSegment;
+		private HttpURLConnection _firstConnection;
+
+		public SegmentWorker(Segment firstSegment, HttpURLConnection firstConnection) {
+			_firstSegment = firstSegment;
+			_firstConnection = firstConnection;
+		}
+
+		@Override
+		public void run() {
+			Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+			Segment segment = _firstSegment;
+
+			try {
+				if(segment == null) {
+					segment = nextSegment();
+				}
+
+				while(segment != null) {
+					boolean rangeResponse = _firstConnection == null;
+					HttpURLConnection conn = rangeResponse ? openSegmentConnection(segment) : _firstConnection;
+					_firstConnection = null;
+
+					downloadSegment(segment, conn, rangeResponse);
+
+					if(!segment.isComplete()) {
+						// Stopped while downloading
+						segmentFailed(segment);
+						segment = null;
+						break;
+					}
+
+					segment = nextSegment();
+				}
+			} catch(Exception e) {
+				UnityAdsDeviceLog.debug("Unity Ads cache: segment download of " + _job.getSource() + " failed: " + e.getMessage());
+
+				if(segment != null) {
+					segmentFailed(segment);
+				}
+			} finally {
+				if(_firstConnection != null) {
+					UnityAdsHttpTransport.release(_firstConnection, false);
+				}
+
+				connectionFinished();
+			}
+		}
+	}
+}
@@ -1,10 +1,13 @@
 package com.unity3d.ads.android.campaign;
 
-import java.io.File;
+import java.util.Locale;
 
 import org.json.JSONObject;
 
+import android.net.Uri;
+
 import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.UnityAdsUtils;
 import com.unity3d.ads.android.properties.UnityAdsConstants;
 
 public class UnityAdsCampaign {
@@ -28,6 +31,9 @@ public class UnityAdsCampaign {
 			UnityAdsConstants.UNITY_ADS_CAMPAIGN_TAGLINE_KEY};
 
 	private UnityAdsCampaignStatus _campaignStatus = UnityAdsCampaignStatus.READY;
+	// Cache checks ask for the file name all the time, it doesn't change as campaign data doesn't
+	private String _videoFilename = null;
+	private static final int MAX_EXTENSION_LENGTH = 5;
 
 	public UnityAdsCampaign (JSONObject fromJSON) {
 		_campaignJson = fromJSON;
@@ -137,11 +143,19 @@ public class UnityAdsCampaign {
 		return null;
 	}
 
+	/**
+	 * Cache file name of the trailer. Name is based on the trailer content instead of the campaign so
+	 * that all campaigns sharing the same trailer also share the same cached file.
+	 */
 	public String getVideoFilename () {
+		if (_videoFilename != null) return _videoFilename;
+
 		if (checkDataIntegrity()) {
 			try {
-				File videoFile = new File(_campaignJson.getString(UnityAdsConstants.UNITY_ADS_CAMPAIGN_TRAILER_DOWNLOADABLE_KEY));
-				return UnityAdsConstants.UNITY_ADS_LOCALFILE_PREFIX + getCampaignId() + "-" + videoFile.getName();
+				// Name depends only on content, so that the same video from different URLs is cached once
+				String videoUrl = _campaignJson.getString(UnityAdsConstants.UNITY_ADS_CAMPAIGN_TRAILER_DOWNLOADABLE_KEY);
+				_videoFilename = UnityAdsConstants.UNITY_ADS_LOCALFILE_PREFIX + getVideoContentKey(videoUrl) + getVideoFileExtension(videoUrl);
+				return _videoFilename;
 			}
 			catch (Exception e) {
 				UnityAdsDeviceLog.error("This should not happen!");
@@ -176,6 +190,31 @@ public class UnityAdsCampaign {
 		return size;
 	}
 
+	/**
+	 * Hex encoded MD5 or SHA-256 hash of the downloadable trailer, null if ad plan doesn't have one or
+	 * it is not a valid hash
+	 */
+	public String getVideoHash () {
+		if (checkDataIntegrity() && _campaignJson.has(UnityAdsConstants.UNITY_ADS_CAMPAIGN_TRAILER_HASH_KEY)) {
+			try {
+				String hash = _campaignJson.getString(UnityAdsConstants.UNITY_ADS_CAMPAIGN_TRAILER_HASH_KEY);
+
+				// Hash becomes part of the cache file name, so anything else than hex could point outside cache directory
+				if (!hash.matches("[0-9a-fA-F]{32}|[0-9a-fA-F]{64}")) {
+					UnityAdsDeviceLog.error("Invalid trailer hash for campaign: " + getCampaignId());
+					return null;
+				}
+
+				return hash;
+			}
+			catch (Exception e) {
+				UnityAdsDeviceLog.error("Could not read trailer hash: " + e.getMessage());
+			}
+		}
+
+		return null;
+	}
+
 	public String getStoreId () {
 		if (_campaignJson.has(UnityAdsConstants.UNITY_ADS_CAMPAIGN_STOREID_KEY)) {
 			try {
@@ -230,6 +269,55 @@ public class UnityAdsCampaign {
 
 	/* INTERNAL METHODS */
 
+	// Hash from ad plan identifies the content best, otherwise same URL and size are assumed to be the same file
+	private String getVideoContentKey (String videoUrl) {
+		String hash = getVideoHash();
+		if (hash != null) return hash.toLowerCase(Locale.US);
+
+		return UnityAdsUtils.Md5(normalizeVideoUrl(videoUrl) + ":" + getVideoFileExpectedSize()).toLowerCase(Locale.US);
+	}
+
+	// Extension of the URL path with the dot, or empty string if it doesn't look like a file extension
+	private static String getVideoFileExtension (String videoUrl) {
+		String name = Uri.parse(videoUrl).getLastPathSegment();
+		if (name == null) return "";
+
+		int dot = name.lastIndexOf('.');
+		String extension = dot != -1 ? name.substring(dot + 1) : "";
+		if (extension.length() == 0 || extension.length() > MAX_EXTENSION_LENGTH) return "";
+
+		for (int i = 0; i < extension.length(); i++) {
+			char c = extension.charAt(i);
+			if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9')) return "";
+		}
+
+		return "." + extension.toLowerCase(Locale.US);
+	}
+
+	// Same file over http and https, with different host name case or with explicit default port is the same content
+	private static String normalizeVideoUrl (String videoUrl) {
+		Uri uri = Uri.parse(videoUrl);
+		String host = uri.getHost();
+		if (host == null) return videoUrl;
+
+		StringBuilder normalized = new StringBuilder("//").append(host.toLowerCase(Locale.US));
+
+		int port = uri.getPort();
+		if (port != -1 && port != 80 && port != 443) {
+			normalized.append(":").append(port);
+		}
+
+		if (uri.getEncodedPath() != null) {
+			normalized.append(uri.getEncodedPath());
+		}
+
+		if (uri.getEncodedQuery() != null) {
+			normalized.append("?").append(uri.getEncodedQuery());
+		}
+
+		return normalized.toString();
+	}
+
 	private boolean checkDataIntegrity () {
 		if (_campaignJson != null) {
 			for (String key : _requiredKeys) {
@@ -0,0 +1,199 @@
+package com.unity3d.ads.android.data;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.UnityAdsUtils;
+import com.unity3d.ads.android.properties.UnityAdsConstants;
+import com.unity3d.ads.android.properties.UnityAdsProperties;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Keeps track of download throughput separately for every network type (wifi and each cellular
+ * network type). Estimates are kept between app launches so that the first ad plan request and
+ * first downloads already know how fast the current network usually is. Speeds are in bytes per
+ * millisecond, same unit that has always been sent to backend as caching speed.
+ */
+public class UnityAdsBandwidthEstimator {
+	private static final String ESTIMATOR_NETWORKS_KEY = "networks";
+	private static final String ESTIMATOR_AVERAGE_KEY = "average";
+	private static final String ESTIMATOR_SAMPLES_KEY = "samples";
+
+	// Smaller transfers mostly measure latency, not throughput
+	private static final long MIN_SAMPLE_BYTES = 16 * 1024;
+	private static final int MAX_SAMPLES = 20;
+	private static final double AVERAGE_WEIGHT = 0.3;
+
+	private static final HashMap<String, NetworkEstimate> _estimates = new HashMap<>();
+	private static boolean _loaded = false;
+
+	private static class NetworkEstimate {
+		private double _average = 0;
+		private final ArrayList<Long> _samples = new ArrayList<>();
+
+		private void addSample(long speed) {
+			_average = _samples.size() == 0 ? speed : AVERAGE_WEIGHT * speed + (1 - AVERAGE_WEIGHT) * _average;
+			_samples.add(speed);
+
+			if(_samples.size() > MAX_SAMPLES) {
+				_samples.remove(0);
+			}
+		}
+
+		private long getPercentile(int percentile) {
+			if(_samples.size() == 0) return 0;
+
+			ArrayList<Long> sorted = new ArrayList<>(_samples);
+			Collections.sort(sorted);
+			return sorted.get((sorted.size() - 1) * percentile / 100);
+		}
+	}
+
+	/**
+	 * Records a finished transfer on the current network
+	 * @param bytes Bytes transferred
+	 * @param duration Duration of the transfer in milliseconds
+	 */
+	public static void addSample(long bytes, long duration) {
+		if(bytes < MIN_SAMPLE_BYTES || duration <= 0) return;
+
+		String network = getNetworkKey();
+		if(network == null) return;
+
+		synchronized(_estimates) {
+			load();
+
+			NetworkEstimate estimate = _estimates.get(network);
+			if(estimate == null) {
+				estimate = new NetworkEstimate();
+				_estimates.put(network, estimate);
+			}
+
+			estimate.addSample(Math.max(1, bytes / duration));
+			UnityAdsDeviceLog.debug("Unity Ads bandwidth on " + network + ": " + (bytes / duration) + " bytes/ms, average " + Math.round(estimate._average));
+
+			save();
+		}
+	}
+
+	/**
+	 * @return Smoothed throughput of current network in bytes per millisecond, 0 if not known
+	 */
+	public static long getEstimate() {
+		NetworkEstimate estimate = getCurrentEstimate();
+		if(estimate == null) return 0;
+
+		synchronized(_estimates) {
+			return Math.round(estimate._average);
+		}
+	}
+
+	/**
+	 * @param percentile Percentile of recent samples between 0 and 100, e.g. 10 for a pessimistic estimate
+	 * @return Throughput of current network in bytes per millisecond, 0 if not known
+	 */
+	public static long getPercentile(int percentile) {
+		NetworkEstimate estimate = getCurrentEstimate();
+		if(estimate == null) return 0;
+
+		synchronized(_estimates) {
+			return estimate.getPercentile(Math.max(0, Math.min(100, percentile)));
+		}
+	}
+
+	private static NetworkEstimate getCurrentEstimate() {
+		String network = getNetworkKey();
+		if(network == null) return null;
+
+		synchronized(_estimates) {
+			load();
+			return _estimates.get(network);
+		}
+	}
+
+	private static String getNetworkKey() {
+		if(UnityAdsProperties.APPLICATION_CONTEXT == null) return null;
+
+		try {
+			if(UnityAdsDevice.isUsingWifi()) return "wifi";
+
+			return "cellular-" + UnityAdsDevice.getNetworkType();
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads bandwidth: couldn't get network type: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private static File getEstimatorFile() {
+		return new File(UnityAdsProperties.APPLICATION_CONTEXT.getFilesDir(), UnityAdsConstants.BANDWIDTH_ESTIMATES_FILENAME);
+	}
+
+	// Must be called while holding _estimates
+	private static void load() {
+		if(_loaded) return;
+		_loaded = true;
+
+		File file = getEstimatorFile();
+		if(!file.exists()) return;
+
+		try {
+			JSONObject networks = new JSONObject(UnityAdsUtils.readFile(file, false)).getJSONObject(ESTIMATOR_NETWORKS_KEY);
+			Iterator<String> keys = networks.keys();
+
+			while(keys.hasNext()) {
+				String network = keys.next();
+				JSONObject networkJson = networks.getJSONObject(network);
+				JSONArray samples = networkJson.getJSONArray(ESTIMATOR_SAMPLES_KEY);
+
+				NetworkEstimate estimate = new NetworkEstimate();
+				for(int i = 0; i < samples.length(); i++) {
+					estimate._samples.add(samples.getLong(i));
+				}
+
+				estimate._average = networkJson.getDouble(ESTIMATOR_AVERAGE_KEY);
+				_estimates.put(network, estimate);
+			}
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads bandwidth: unable to read estimates: " + e.getMessage());
+		}
+	}
+
+	// Must be called while holding _estimates
+	private static void save() {
+		File file = getEstimatorFile();
+		File tempFile = new File(file.getPath() + ".tmp");
+
+		try {
+			JSONObject networks = new JSONObject();
+
+			for(String network : _estimates.keySet()) {
+				NetworkEstimate estimate = _estimates.get(network);
+				JSONObject networkJson = new JSONObject();
+				networkJson.put(ESTIMATOR_AVERAGE_KEY, estimate._average);
+				networkJson.put(ESTIMATOR_SAMPLES_KEY, new JSONArray(estimate._samples));
+				networks.put(network, networkJson);
+			}
+
+			JSONObject json = new JSONObject();
+			json.put(ESTIMATOR_NETWORKS_KEY, networks);
+
+			FileOutputStream output = new FileOutputStream(tempFile);
+			output.write(json.toString().getBytes("UTF-8"));
+			output.flush();
+			output.close();
+
+			if(!tempFile.renameTo(file)) {
+				UnityAdsDeviceLog.debug("Unity Ads bandwidth: couldn't rename estimates file");
+			}
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads bandwidth: unable to write estimates: " + e.getMessage());
+		}
+	}
+}
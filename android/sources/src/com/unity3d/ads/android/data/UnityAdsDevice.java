@@ -3,10 +3,13 @@ package com.unity3d.ads.android.data;
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
+import android.os.BatteryManager;
 import android.os.Build;
 import android.provider.Settings.Secure;
 import android.telephony.TelephonyManager;
@@ -163,4 +166,44 @@ public class UnityAdsDevice {
 
 		return false;
 	}
-}
\ No newline at end of file
+
+	public static boolean isActiveNetworkMetered () {
+		ConnectivityManager cm = (ConnectivityManager)UnityAdsProperties.APPLICATION_CONTEXT.getSystemService(Context.CONNECTIVITY_SERVICE);
+
+		// Unknown network is treated as metered so that data is not used by accident
+		return cm == null || cm.isActiveNetworkMetered();
+	}
+
+	public static boolean isCharging () {
+		Intent battery = getBatteryStatus();
+		if (battery == null) return false;
+
+		int status = battery.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+		return status == BatteryManager.BATTERY_STATUS_CHARGING || status == BatteryManager.BATTERY_STATUS_FULL;
+	}
+
+	/**
+	 * @return Battery level between 0 and 100, -1 if not known
+	 */
+	public static int getBatteryLevel () {
+		Intent battery = getBatteryStatus();
+		if (battery == null) return -1;
+
+		int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+		int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+		if (level < 0 || scale <= 0) return -1;
+
+		return level * 100 / scale;
+	}
+
+	private static Intent getBatteryStatus () {
+		try {
+			// Battery status is a sticky broadcast, it can be read without registering a receiver
+			return UnityAdsProperties.APPLICATION_CONTEXT.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+		}
+		catch (Exception e) {
+			UnityAdsDeviceLog.debug("Problems reading battery status: " + e.getMessage());
+			return null;
+		}
+	}
+}
@@ -0,0 +1,358 @@
+package com.unity3d.ads.android.data;
+
+import android.net.SSLCertificateSocketFactory;
+import android.net.SSLSessionCache;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.properties.UnityAdsProperties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Opens all HTTP connections of ad plan, analytics and video requests. Connections go to the shared
+ * keep-alive pool of HttpURLConnection when their response has been read to the end, and TLS
+ * sessions are kept in a session cache on disk so that handshakes are resumed also after app
+ * restart. Counters show how many requests needed a new TLS connection and how many handshakes were
+ * resumed.
+ */
+public class UnityAdsHttpTransport {
+	private static final int HANDSHAKE_TIMEOUT_MS = 30000;
+	// Smaller bodies don't get any smaller with gzip
+	private static final int MIN_GZIP_BODY_LENGTH = 256;
+
+	private static final AtomicInteger _requests = new AtomicInteger();
+	private static final AtomicInteger _httpsRequests = new AtomicInteger();
+	private static final AtomicInteger _tlsConnections = new AtomicInteger();
+	private static final AtomicInteger _tlsHandshakes = new AtomicInteger();
+	private static final AtomicInteger _tlsResumed = new AtomicInteger();
+	private static final AtomicLong _requestBytes = new AtomicLong();
+	private static final AtomicLong _requestWireBytes = new AtomicLong();
+	private static final AtomicLong _responseBytes = new AtomicLong();
+	private static final AtomicLong _responseWireBytes = new AtomicLong();
+	// Creation time of TLS sockets whose handshake hasn't completed yet
+	private static final Map<Socket, Long> _socketTimes = Collections.synchronizedMap(new WeakHashMap<Socket, Long>());
+	private static SSLSocketFactory _socketFactory = null;
+
+	/**
+	 * Opens connection to url. Response must either be read to the end and its stream closed, or
+	 * connection released with release(conn, false).
+	 */
+	public static HttpURLConnection open(String url, int connectTimeout, int readTimeout) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection)new URL(url).openConnection();
+		conn.setConnectTimeout(connectTimeout);
+		conn.setReadTimeout(readTimeout);
+
+		_requests.incrementAndGet();
+
+		if(conn instanceof HttpsURLConnection) {
+			_httpsRequests.incrementAndGet();
+
+			SSLSocketFactory socketFactory = getSocketFactory();
+			if(socketFactory != null) {
+				((HttpsURLConnection)conn).setSSLSocketFactory(socketFactory);
+			}
+		}
+
+		return conn;
+	}
+
+	/**
+	 * @param completed True if response was read to the end and its stream closed, so that connection
+	 * can be reused. Otherwise connection is closed.
+	 */
+	public static void release(HttpURLConnection conn, boolean completed) {
+		if(conn != null && !completed) {
+			conn.disconnect();
+		}
+	}
+
+	/**
+	 * Asks server to gzip response. Response must then be read with getResponseStream.
+	 */
+	public static void acceptGzip(HttpURLConnection conn) {
+		// Setting the header ourselves turns off transparent decompression, so that compressed bytes can be counted
+		conn.setRequestProperty("Accept-Encoding", "gzip");
+	}
+
+	/**
+	 * @return Response body, decompressed while it is read if server gzipped it
+	 */
+	public static ResponseStream getResponseStream(HttpURLConnection conn) throws IOException {
+		CountingInputStream wire = new CountingInputStream(conn.getInputStream(), _responseWireBytes);
+		InputStream body = "gzip".equalsIgnoreCase(conn.getContentEncoding()) ? new GZIPInputStream(wire) : wire;
+
+		return new ResponseStream(body, wire);
+	}
+
+	/**
+	 * Writes request body as UTF-8, must be called before connection is connected
+	 * @param compress True if body should be gzipped, server has to accept Content-Encoding gzip
+	 */
+	public static void writeBody(HttpURLConnection conn, String body, boolean compress) throws IOException {
+		byte[] bytes = body.getBytes("UTF-8");
+		byte[] wireBytes = bytes;
+
+		if(compress && bytes.length >= MIN_GZIP_BODY_LENGTH) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2);
+			GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+			gzip.write(bytes);
+			gzip.close();
+
+			wireBytes = compressed.toByteArray();
+			conn.setRequestProperty("Content-Encoding", "gzip");
+		}
+
+		conn.setFixedLengthStreamingMode(wireBytes.length);
+
+		OutputStream output = conn.getOutputStream();
+		output.write(wireBytes);
+		output.flush();
+		output.close();
+
+		_requestBytes.addAndGet(bytes.length);
+		_requestWireBytes.addAndGet(wireBytes.length);
+	}
+
+	public static int getRequestCount() {
+		return _requests.get();
+	}
+
+	/**
+	 * @return Number of new TLS connections, counted when their socket is created
+	 */
+	public static int getTlsConnectionCount() {
+		return _tlsConnections.get();
+	}
+
+	/**
+	 * @return Number of completed TLS handshakes
+	 */
+	public static int getTlsHandshakeCount() {
+		return _tlsHandshakes.get();
+	}
+
+	/**
+	 * @return Number of TLS handshakes that resumed an earlier session instead of a full handshake
+	 */
+	public static int getTlsResumedCount() {
+		return _tlsResumed.get();
+	}
+
+	/**
+	 * @return Number of HTTPS requests that were sent on an already open connection
+	 */
+	public static int getReusedConnectionCount() {
+		// Socket is created on the requesting thread before the request is sent, so this doesn't wait for handshakes
+		return Math.max(0, _httpsRequests.get() - _tlsConnections.get());
+	}
+
+	/**
+	 * @return Uncompressed bytes of request bodies written with writeBody
+	 */
+	public static long getRequestBytes() {
+		return _requestBytes.get();
+	}
+
+	/**
+	 * @return Bytes of request bodies written with writeBody as they were sent, after compression
+	 */
+	public static long getRequestWireBytes() {
+		return _requestWireBytes.get();
+	}
+
+	/**
+	 * @return Uncompressed bytes of responses read with getResponseStream
+	 */
+	public static long getResponseBytes() {
+		return _responseBytes.get();
+	}
+
+	/**
+	 * @return Bytes of responses read with getResponseStream as they were received, before decompression
+	 */
+	public static long getResponseWireBytes() {
+		return _responseWireBytes.get();
+	}
+
+	private static synchronized SSLSocketFactory getSocketFactory() {
+		if(_socketFactory != null) return _socketFactory;
+		if(UnityAdsProperties.APPLICATION_CONTEXT == null) return null;
+
+		try {
+			// Verifies certificates and host names like the default factory, and persists sessions
+			SSLSocketFactory factory = SSLCertificateSocketFactory.getDefault(HANDSHAKE_TIMEOUT_MS, new SSLSessionCache(UnityAdsProperties.APPLICATION_CONTEXT));
+			_socketFactory = new CountingSocketFactory(factory);
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads transport: couldn't create TLS session cache: " + e.getMessage());
+		}
+
+		return _socketFactory;
+	}
+
+	private static void socketCreated(Socket socket) {
+		_tlsConnections.incrementAndGet();
+		_socketTimes.put(socket, System.currentTimeMillis());
+	}
+
+	private static void handshakeCompleted(HandshakeCompletedEvent event) {
+		_tlsHandshakes.incrementAndGet();
+
+		// Full handshake creates a new session, resumed session was created before this socket, possibly before app restart
+		Long socketTime = _socketTimes.remove(event.getSocket());
+		if(socketTime != null && event.getSession().getCreationTime() < socketTime) {
+			_tlsResumed.incrementAndGet();
+		}
+	}
+
+	private static class CountingInputStream extends FilterInputStream {
+		private final AtomicLong _total;
+		private long _count = 0;
+
+		public CountingInputStream(InputStream input, AtomicLong total) {
+			super(input);
+			_total = total;
+		}
+
+		public long getCount() {
+			return _count;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b != -1) {
+				counted(1);
+			}
+
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int count = super.read(buffer, offset, length);
+			if(count > 0) {
+				counted(count);
+			}
+
+			return count;
+		}
+
+		@Override
+		public long skip(long count) throws IOException {
+			long skipped = super.skip(count);
+			if(skipped > 0) {
+				counted(skipped);
+			}
+
+			return skipped;
+		}
+
+		private void counted(long count) {
+			_count += count;
+			_total.addAndGet(count);
+		}
+	}
+
+	/**
+	 * Response body that knows how many bytes it took on the wire
+	 */
+	public static class ResponseStream extends CountingInputStream {
+		private final CountingInputStream _wire;
+
+		private ResponseStream(InputStream body, CountingInputStream wire) {
+			super(body, _responseBytes);
+			_wire = wire;
+		}
+
+		/**
+		 * @return Bytes received so far, compressed if response was compressed
+		 */
+		public long getWireBytes() {
+			return _wire.getCount();
+		}
+	}
+
+	private static class CountingSocketFactory extends SSLSocketFactory {
+		private final SSLSocketFactory _factory;
+		private final HandshakeCompletedListener _listener = new HandshakeCompletedListener() {
+			@Override
+			public void handshakeCompleted(HandshakeCompletedEvent event) {
+				UnityAdsHttpTransport.handshakeCompleted(event);
+			}
+		};
+
+		public CountingSocketFactory(SSLSocketFactory factory) {
+			_factory = factory;
+		}
+
+		@Override
+		public String[] getDefaultCipherSuites() {
+			return _factory.getDefaultCipherSuites();
+		}
+
+		@Override
+		public String[] getSupportedCipherSuites() {
+			return _factory.getSupportedCipherSuites();
+		}
+
+		@Override
+		public Socket createSocket() throws IOException {
+			return track(_factory.createSocket());
+		}
+
+		@Override
+		public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+			return track(_factory.createSocket(socket, host, port, autoClose));
+		}
+
+		@Override
+		public Socket createSocket(String host, int port) throws IOException {
+			return track(_factory.createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+			return track(_factory.createSocket(host, port, localHost, localPort));
+		}
+
+		@Override
+		public Socket createSocket(InetAddress host, int port) throws IOException {
+			return track(_factory.createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+			return track(_factory.createSocket(address, port, localAddress, localPort));
+		}
+
+		private Socket track(Socket socket) {
+			if(socket instanceof SSLSocket) {
+				UnityAdsHttpTransport.socketCreated(socket);
+				((SSLSocket)socket).addHandshakeCompletedListener(_listener);
+			}
+
+			return socket;
+		}
+	}
+}
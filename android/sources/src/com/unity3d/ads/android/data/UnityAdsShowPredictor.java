@@ -0,0 +1,205 @@
+package com.unity3d.ads.android.data;
+
+import android.os.SystemClock;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.UnityAdsUtils;
+import com.unity3d.ads.android.properties.UnityAdsConstants;
+import com.unity3d.ads.android.properties.UnityAdsProperties;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Predicts when the game is going to show the next ad. Games usually show ads at regular moments,
+ * so the time from session start to the first show and the times between shows are recorded and
+ * kept between app launches. Prediction is a low percentile of recent samples so that it is more
+ * likely to be early than late. Samples are written to file on a background thread, not in the show path.
+ */
+public class UnityAdsShowPredictor {
+	private static final String PREDICTOR_FIRST_SHOWS_KEY = "firstShows";
+	private static final String PREDICTOR_INTERVALS_KEY = "intervals";
+
+	private static final int MAX_SAMPLES = 20;
+	private static final int MIN_SAMPLES = 3;
+	private static final int PREDICTION_PERCENTILE = 25;
+	private static final long SAVE_DELAY_MS = 500;
+
+	private static final Object _lock = new Object();
+	private static final ArrayList<Long> _firstShows = new ArrayList<>();
+	private static final ArrayList<Long> _intervals = new ArrayList<>();
+	private static boolean _loaded = false;
+	private static long _sessionStart = SystemClock.elapsedRealtime();
+	private static long _lastShow = -1;
+	private static boolean _savePending = false;
+	private static Timer _saveTimer = null;
+
+	public static void sessionStarted() {
+		sessionStarted(SystemClock.elapsedRealtime());
+	}
+
+	static void sessionStarted(long now) {
+		synchronized(_lock) {
+			_sessionStart = now;
+			_lastShow = -1;
+		}
+	}
+
+	/**
+	 * Records that the game showed an ad now
+	 */
+	public static void showStarted() {
+		showStarted(SystemClock.elapsedRealtime());
+	}
+
+	static void showStarted(long now) {
+		synchronized(_lock) {
+			load();
+
+			if(_lastShow == -1) {
+				addSample(_firstShows, now - _sessionStart);
+			} else {
+				addSample(_intervals, now - _lastShow);
+			}
+
+			_lastShow = now;
+			save();
+		}
+	}
+
+	/**
+	 * @return Predicted time of next show in SystemClock.elapsedRealtime() time base, -1 if it can't
+	 * be predicted or predicted time has already passed and show could happen at any moment
+	 */
+	public static long getNextShowTime() {
+		return getNextShowTime(SystemClock.elapsedRealtime());
+	}
+
+	static long getNextShowTime(long now) {
+		synchronized(_lock) {
+			load();
+
+			ArrayList<Long> samples = _lastShow == -1 ? _firstShows : _intervals;
+			if(samples.size() < MIN_SAMPLES) return -1;
+
+			ArrayList<Long> sorted = new ArrayList<>(samples);
+			Collections.sort(sorted);
+			long delay = sorted.get((sorted.size() - 1) * PREDICTION_PERCENTILE / 100);
+			long nextShow = (_lastShow == -1 ? _sessionStart : _lastShow) + delay;
+
+			return nextShow > now ? nextShow : -1;
+		}
+	}
+
+	/**
+	 * Forgets all recorded show times and doesn't read them from file anymore, used by tests
+	 */
+	static void clear() {
+		synchronized(_lock) {
+			_firstShows.clear();
+			_intervals.clear();
+			_loaded = true;
+			_lastShow = -1;
+		}
+	}
+
+	private static void addSample(ArrayList<Long> samples, long sample) {
+		samples.add(Math.max(0, sample));
+
+		if(samples.size() > MAX_SAMPLES) {
+			samples.remove(0);
+		}
+	}
+
+	private static File getPredictorFile() {
+		if(UnityAdsProperties.APPLICATION_CONTEXT == null) return null;
+
+		return new File(UnityAdsProperties.APPLICATION_CONTEXT.getFilesDir(), UnityAdsConstants.SHOW_TIMES_FILENAME);
+	}
+
+	// Must be called while holding _lock
+	private static void load() {
+		if(_loaded) return;
+
+		File file = getPredictorFile();
+		if(file == null) return;
+
+		_loaded = true;
+		if(!file.exists()) return;
+
+		try {
+			JSONObject json = new JSONObject(UnityAdsUtils.readFile(file, false));
+			readSamples(json.getJSONArray(PREDICTOR_FIRST_SHOWS_KEY), _firstShows);
+			readSamples(json.getJSONArray(PREDICTOR_INTERVALS_KEY), _intervals);
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads show predictor: unable to read show times: " + e.getMessage());
+		}
+	}
+
+	private static void readSamples(JSONArray json, ArrayList<Long> samples) throws Exception {
+		samples.clear();
+
+		for(int i = 0; i < json.length(); i++) {
+			addSample(samples, json.getLong(i));
+		}
+	}
+
+	// Must be called while holding _lock
+	private static void save() {
+		if(_savePending) return;
+
+		_savePending = true;
+
+		if(_saveTimer == null) {
+			_saveTimer = new Timer("UnityAdsShowPredictorTimer", true);
+		}
+
+		_saveTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, SAVE_DELAY_MS);
+	}
+
+	private static void write() {
+		JSONObject json = new JSONObject();
+
+		synchronized(_lock) {
+			_savePending = false;
+
+			try {
+				json.put(PREDICTOR_FIRST_SHOWS_KEY, new JSONArray(_firstShows));
+				json.put(PREDICTOR_INTERVALS_KEY, new JSONArray(_intervals));
+			} catch(Exception e) {
+				UnityAdsDeviceLog.debug("Unity Ads show predictor: unable to serialize show times: " + e.getMessage());
+				return;
+			}
+		}
+
+		File file = getPredictorFile();
+		if(file == null) return;
+
+		File tempFile = new File(file.getPath() + ".tmp");
+
+		try {
+			FileOutputStream output = new FileOutputStream(tempFile);
+			output.write(json.toString().getBytes("UTF-8"));
+			output.flush();
+			output.close();
+
+			if(!tempFile.renameTo(file)) {
+				UnityAdsDeviceLog.debug("Unity Ads show predictor: couldn't rename show times file");
+			}
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Unity Ads show predictor: unable to write show times: " + e.getMessage());
+		}
+	}
+}
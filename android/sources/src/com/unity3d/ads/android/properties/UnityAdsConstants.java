@@ -4,7 +4,17 @@ public class UnityAdsConstants {
 	// Android specific
 	public static final String CACHE_DIR_NAME = "UnityAdsVideoCache";
 	public static final String PENDING_REQUESTS_FILENAME = UnityAdsConstants.UNITY_ADS_LOCALFILE_PREFIX + "pendingrequests.dat";
+	public static final String PENDING_REQUESTS_LOG_FILENAME = UnityAdsConstants.UNITY_ADS_LOCALFILE_PREFIX + "pendingrequests.log";
 	public static final String UNITY_ADS_LOCALFILE_PREFIX = "UnityAds-";
+	public static final String CACHE_INDEX_FILENAME = UnityAdsConstants.UNITY_ADS_LOCALFILE_PREFIX + "cacheindex.dat";
+	public static final String CACHE_DOWNLOAD_QUEUE_FILENAME = UnityAdsConstants.UNITY_ADS_LOCALFILE_PREFIX + "downloadqueue.dat";
+	public static final String BANDWIDTH_ESTIMATES_FILENAME = UnityAdsConstants.UNITY_ADS_LOCALFILE_PREFIX + "bandwidth.dat";
+	public static final String CACHE_STATS_FILENAME = UnityAdsConstants.UNITY_ADS_LOCALFILE_PREFIX + "cachestats.dat";
+	public static final String SHOW_TIMES_FILENAME = UnityAdsConstants.UNITY_ADS_LOCALFILE_PREFIX + "showtimes.dat";
+	public static final String CACHE_PARTIAL_FILE_SUFFIX = ".part";
+	public static final String CACHE_JOURNAL_FILE_SUFFIX = ".journal";
+	public static final String CACHE_QUARANTINE_FILE_SUFFIX = ".quarantine";
+	public static final String CACHE_FASTSTART_FILE_SUFFIX = ".faststart";
 
 	/*
 	 * UNITY_ADS_VERSION is an integer composed of SDK major (X), minor (Y) and fix (Z) versions with format XYZZ
@@ -73,6 +83,7 @@ public class UnityAdsConstants {
 	public static final String UNITY_ADS_CAMPAIGN_TRAILER_DOWNLOADABLE_KEY = "trailerDownloadable";
 	public static final String UNITY_ADS_CAMPAIGN_TRAILER_STREAMING_KEY = "trailerStreaming";
 	public static final String UNITY_ADS_CAMPAIGN_TRAILER_SIZE_KEY = "trailerSize";
+	public static final String UNITY_ADS_CAMPAIGN_TRAILER_HASH_KEY = "trailerHash";
 	public static final String UNITY_ADS_CAMPAIGN_GAME_ID_KEY = "gameId";
 	public static final String UNITY_ADS_CAMPAIGN_GAME_NAME_KEY = "gameName";
 	public static final String UNITY_ADS_CAMPAIGN_ID_KEY = "id";
@@ -140,6 +151,7 @@ public class UnityAdsConstants {
 	public static final String UNITY_ADS_INIT_QUERYPARAM_APPFILTER_KEY = "appFilterList";
 	public static final String UNITY_ADS_INIT_QUERYPARAM_CACHEDPLAYBACK_KEY = "cachedPlayback";
 	public static final String UNITY_ADS_INIT_QUERYPARAM_CACHINGSPEED_KEY = "cachingSpeed";
+	public static final String UNITY_ADS_INIT_QUERYPARAM_CACHEDVIDEOS_KEY = "cachedVideos";
 	public static final String UNITY_ADS_INIT_QUERYPARAM_UNITYVERSION_KEY = "unityVersion";
 
 	/* Device types */
@@ -156,6 +168,12 @@ public class UnityAdsConstants {
 	public static final String UNITY_ADS_ANALYTICS_QUERYPARAM_ZONE_KEY = "zone";
 	public static final String UNITY_ADS_ANALYTICS_QUERYPARAM_REWARDITEM_KEY = "rewardItem";
 	public static final String UNITY_ADS_ANALYTICS_QUERYPARAM_GAMERSID_KEY = "sid";
+	public static final String UNITY_ADS_ANALYTICS_QUERYPARAM_CACHEDSHOWS_KEY = "cachedShows";
+	public static final String UNITY_ADS_ANALYTICS_QUERYPARAM_STREAMEDSHOWS_KEY = "streamedShows";
+	public static final String UNITY_ADS_ANALYTICS_QUERYPARAM_CACHEDOWNLOADEDBYTES_KEY = "cacheDownloadedBytes";
+	public static final String UNITY_ADS_ANALYTICS_QUERYPARAM_CACHEWASTEDBYTES_KEY = "cacheWastedBytes";
+	public static final String UNITY_ADS_ANALYTICS_QUERYPARAM_TIMETOCACHED_KEY = "timeToCached";
+	public static final String UNITY_ADS_ANALYTICS_QUERYPARAM_TOTAL_PREFIX = "total";
 
 	/* Failed URL keys */
 	public static final String UNITY_ADS_FAILED_URL_URL_KEY = "url";
@@ -11,7 +11,9 @@ import android.content.Context;
 
 import com.unity3d.ads.android.UnityAdsDeviceLog;
 import com.unity3d.ads.android.UnityAdsUtils;
+import com.unity3d.ads.android.cache.UnityAdsCache;
 import com.unity3d.ads.android.campaign.UnityAdsCampaign;
+import com.unity3d.ads.android.data.UnityAdsBandwidthEstimator;
 import com.unity3d.ads.android.data.UnityAdsDevice;
 import com.unity3d.ads.android.view.UnityAdsFullscreenActivity;
 
@@ -33,7 +35,7 @@ public class UnityAdsProperties {
 	public static int CAMPAIGN_REFRESH_VIEWS_COUNT = 0;
 	public static int CAMPAIGN_REFRESH_VIEWS_MAX = 0;
 	public static int CAMPAIGN_REFRESH_SECONDS = 0;
-	public static long CACHING_SPEED = 0;
+	public static long CACHE_SIZE_BUDGET = 100 * 1024 * 1024;
 	public static String UNITY_VERSION = null;
 
 	// Cannot be final since in test cases values are put into these properties
@@ -53,6 +55,29 @@ public class UnityAdsProperties {
 
 	public static final int MAX_NUMBER_OF_ANALYTICS_RETRIES = 5;
 	public static final int MAX_BUFFERING_WAIT_SECONDS = 20;
+	public static final int MAX_CONCURRENT_REQUESTS = 3;
+	// Analytics events that are not needed in real time are sent in batches of at most this many or after this long
+	public static final int EVENT_BATCH_MAX_SIZE = 10;
+	public static final long EVENT_BATCH_WINDOW_MS = 30000;
+	// Responses are always accepted gzipped, request bodies are gzipped only when backend accepts Content-Encoding gzip
+	public static boolean GZIP_REQUEST_BODIES = false;
+	public static final int MAX_CONCURRENT_DOWNLOADS = 3;
+	public static final int MAX_CONCURRENT_DOWNLOADS_PER_HOST = 2;
+	public static final int MAX_SEGMENT_CONNECTIONS = 4;
+	public static final int MAX_DOWNLOAD_ATTEMPTS = 5;
+	public static final long DOWNLOAD_RETRY_BASE_DELAY_MS = 2000;
+	public static final long DOWNLOAD_RETRY_MAX_DELAY_MS = 60000;
+	public static final long SEGMENTED_DOWNLOAD_MIN_SIZE = 4 * 1024 * 1024;
+	public static boolean SEGMENTED_DOWNLOADS_ENABLED = true;
+	// Bytes per second shared by background downloads while a streamed video is playing
+	public static final long DOWNLOAD_PLAYBACK_RATE_LIMIT = 256 * 1024;
+	// Bytes per millisecond, downloads are done one at a time when network is slower than this
+	public static final long SLOW_NETWORK_SPEED = 64;
+	// Seconds of video cached when only the beginning of a video is cached
+	public static final int PREFIX_CACHE_SECONDS = 5;
+	// Cached videos are sent to ad plan request as this many leading hex characters of their content keys
+	public static final int MAX_CACHED_VIDEOS_IN_QUERY = 32;
+	public static final int CACHED_VIDEO_KEY_LENGTH = 8;
 
 	public static Boolean UNITY_ADS_READY_SENT = false;
 
@@ -96,8 +121,14 @@ public class UnityAdsProperties {
 				queryString = String.format(Locale.US, "%s&%s=%d", queryString, UnityAdsConstants.UNITY_ADS_INIT_QUERYPARAM_ANDROIDNETWORKTYPE_KEY, UnityAdsDevice.getNetworkType());
 			}
 
-			if(CACHING_SPEED > 0) {
-				queryString = String.format(Locale.US, "%s&%s=%d", queryString, UnityAdsConstants.UNITY_ADS_INIT_QUERYPARAM_CACHINGSPEED_KEY, CACHING_SPEED);
+			long cachingSpeed = UnityAdsBandwidthEstimator.getEstimate();
+			if(cachingSpeed > 0) {
+				queryString = String.format(Locale.US, "%s&%s=%d", queryString, UnityAdsConstants.UNITY_ADS_INIT_QUERYPARAM_CACHINGSPEED_KEY, cachingSpeed);
+			}
+
+			String cachedVideos = getCachedVideosParam();
+			if(cachedVideos.length() > 0) {
+				queryString = String.format(Locale.US, "%s&%s=%s", queryString, UnityAdsConstants.UNITY_ADS_INIT_QUERYPARAM_CACHEDVIDEOS_KEY, URLEncoder.encode(cachedVideos, "UTF-8"));
 			}
 
 			queryString = String.format(Locale.US, "%s&%s=%s", queryString, UnityAdsConstants.UNITY_ADS_INIT_QUERYPARAM_SCREENSIZE_KEY, UnityAdsDevice.getScreenSize());
@@ -135,6 +166,21 @@ public class UnityAdsProperties {
 		_campaignQueryString = queryString;
 	}
 
+	// Comma separated prefixes of content keys, so that campaigns with cached videos can be ranked first
+	private static String getCachedVideosParam () {
+		StringBuilder param = new StringBuilder();
+
+		for(String key : UnityAdsCache.getCachedContentKeys(MAX_CACHED_VIDEOS_IN_QUERY)) {
+			if(param.length() > 0) {
+				param.append(",");
+			}
+
+			param.append(key.length() > CACHED_VIDEO_KEY_LENGTH ? key.substring(0, CACHED_VIDEO_KEY_LENGTH) : key);
+		}
+
+		return param.toString();
+	}
+
 	public static String getCampaignQueryUrl () {
 		createCampaignQueryString();
 		String url = CAMPAIGN_DATA_URL;
@@ -17,6 +17,7 @@ import com.mojang.base.Helper;
 import com.unity3d.ads.android.R;
 import com.unity3d.ads.android.UnityAdsDeviceLog;
 import com.unity3d.ads.android.UnityAdsUtils;
+import com.unity3d.ads.android.cache.UnityAdsCache;
 import com.unity3d.ads.android.properties.UnityAdsProperties;
 import com.unity3d.ads.android.view.UnityAdsMuteVideoButton;
 import com.unity3d.ads.android.view.UnityAdsViewUtils;
@@ -475,9 +476,11 @@ public class UnityAdsVideoPlayView extends RelativeLayout {
 			
 			if (_curPos > _oldPos) {
 				_playHeadHasMoved = true;
+				if (_videoHasStalled) UnityAdsCache.playbackBuffering(false);
 				_videoHasStalled = false;
 				setBufferingTextVisibility(INVISIBLE, hasSkipDuration(), _skipTimeLeft <= 0f);
 			} else { 
+				if (!_videoHasStalled) UnityAdsCache.playbackBuffering(true);
 				_videoHasStalled = true;
 				setBufferingTextVisibility(VISIBLE, true, true);
 			}
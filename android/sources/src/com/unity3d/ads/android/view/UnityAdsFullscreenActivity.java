@@ -61,6 +61,8 @@ public class UnityAdsFullscreenActivity extends Activity implements IUnityAdsWeb
 		_finishOperationsDone = true;
 
 		UnityAdsDeviceLog.debug("Running finish operations on Unity Ads activity");
+		UnityAdsCache.playbackFinished();
+
 		if (UnityAdsWebData.getZoneManager() != null) {
 			UnityAdsZone currentZone = UnityAdsWebData.getZoneManager().getCurrentZone();
 			if (!currentZone.openAnimated()) {
@@ -351,6 +353,7 @@ public class UnityAdsFullscreenActivity extends Activity implements IUnityAdsWeb
 		String msg = "WebView requested CloseAdsView";
 		if (data != null) msg += " " + data.toString();
 		UnityAdsDeviceLog.debug(msg);
+		UnityAdsWebData.flushEvents();
 		UnityAdsUtils.runOnUiThread(new Runnable() {
 			@Override
 			public void run() {
@@ -583,13 +586,16 @@ public class UnityAdsFullscreenActivity extends Activity implements IUnityAdsWeb
 
 				String playUrl;
 				if (!UnityAdsCache.isCampaignCached(UnityAdsProperties.SELECTED_CAMPAIGN)) {
-					playUrl = UnityAdsProperties.SELECTED_CAMPAIGN.getVideoStreamUrl();
+					playUrl = UnityAdsCache.getStreamingUrl(UnityAdsProperties.SELECTED_CAMPAIGN);
 					UnityAdsProperties.SELECTED_CAMPAIGN_CACHED = false;
 				} else {
 					playUrl = UnityAdsCache.getCacheDirectory() + "/" + UnityAdsProperties.SELECTED_CAMPAIGN.getVideoFilename();
 					UnityAdsProperties.SELECTED_CAMPAIGN_CACHED = true;
+					UnityAdsCache.campaignShown(UnityAdsProperties.SELECTED_CAMPAIGN);
 				}
 
+				UnityAdsCache.playbackStarted(UnityAdsProperties.SELECTED_CAMPAIGN_CACHED);
+
 				getMainView().setViewState(UnityAdsMainView.UnityAdsMainViewState.VideoPlayer);
 				getMainView().videoplayerview.setListener(_listener);
 				UnityAdsDeviceLog.debug("Start videoplayback with: " + playUrl);
@@ -601,6 +607,8 @@ public class UnityAdsFullscreenActivity extends Activity implements IUnityAdsWeb
 	}
 
 	private void finishPlayback () {
+		UnityAdsCache.playbackFinished();
+
 		if (getMainView().videoplayerview != null) {
 			getMainView().videoplayerview.setKeepScreenOn(false);
 		}
@@ -0,0 +1,106 @@
+package com.unity3d.ads.android.webapp;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.UnityAdsUtils;
+import com.unity3d.ads.android.properties.UnityAdsProperties;
+
+import java.util.ArrayList;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Holds analytics requests that are not needed in real time and sends them all together, so that
+ * the radio is woken up once per batch instead of once per event. Every event is still its own
+ * request with its own retries. Batch is sent when it is full, when the flush window ends, when ad
+ * view is closed and when app goes to background.
+ */
+class UnityAdsEventBatcher {
+	private static final Object _lock = new Object();
+	private static final ArrayList<Runnable> _events = new ArrayList<>();
+	private static Timer _timer = null;
+	private static TimerTask _flushTask = null;
+	private static ComponentCallbacks2 _backgroundCallbacks = null;
+
+	/**
+	 * @param event Runnable that creates and queues the request when run on UI thread
+	 */
+	public static void add(Runnable event) {
+		boolean flush;
+
+		synchronized(_lock) {
+			registerBackgroundCallbacks();
+			_events.add(event);
+			flush = _events.size() >= UnityAdsProperties.EVENT_BATCH_MAX_SIZE;
+
+			if(!flush && _flushTask == null) {
+				_flushTask = new TimerTask() {
+					@Override
+					public void run() {
+						flush();
+					}
+				};
+
+				if(_timer == null) {
+					_timer = new Timer("UnityAdsEventBatchTimer", true);
+				}
+
+				_timer.schedule(_flushTask, UnityAdsProperties.EVENT_BATCH_WINDOW_MS);
+			}
+		}
+
+		if(flush) {
+			flush();
+		}
+	}
+
+	public static void flush() {
+		ArrayList<Runnable> events;
+
+		synchronized(_lock) {
+			if(_flushTask != null) {
+				_flushTask.cancel();
+				_flushTask = null;
+			}
+
+			if(_events.size() == 0) return;
+
+			events = new ArrayList<>(_events);
+			_events.clear();
+		}
+
+		UnityAdsDeviceLog.debug("Sending batch of " + events.size() + " analytics events");
+
+		for(Runnable event : events) {
+			UnityAdsUtils.runOnUiThread(event);
+		}
+	}
+
+	// Must be called while holding _lock
+	private static void registerBackgroundCallbacks() {
+		if(_backgroundCallbacks != null || UnityAdsProperties.APPLICATION_CONTEXT == null) return;
+
+		_backgroundCallbacks = new ComponentCallbacks2() {
+			@Override
+			public void onTrimMemory(int level) {
+				// UI of the app is no longer visible
+				if(level >= TRIM_MEMORY_UI_HIDDEN) {
+					flush();
+				}
+			}
+
+			@Override
+			public void onConfigurationChanged(Configuration newConfig) {
+			}
+
+			@Override
+			public void onLowMemory() {
+				flush();
+			}
+		};
+
+		UnityAdsProperties.APPLICATION_CONTEXT.registerComponentCallbacks(_backgroundCallbacks);
+	}
+}
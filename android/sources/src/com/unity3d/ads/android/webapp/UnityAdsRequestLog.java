@@ -0,0 +1,301 @@
+package com.unity3d.ads.android.webapp;
+
+import android.os.SystemClock;
+
+import com.unity3d.ads.android.UnityAdsDeviceLog;
+import com.unity3d.ads.android.UnityAdsUtils;
+import com.unity3d.ads.android.cache.UnityAdsCache;
+import com.unity3d.ads.android.properties.UnityAdsConstants;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of requests that failed and are sent again on next init. Every record is the
+ * length and CRC32 of its payload followed by the payload, so a record that was being written when
+ * the app died is detected and dropped instead of losing the whole log. Log is bounded in size,
+ * oldest records are dropped when it grows too large.
+ */
+class UnityAdsRequestLog {
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final int MAX_RECORD_SIZE = 64 * 1024;
+	private static final long MAX_LOG_SIZE = 512 * 1024;
+	// Log is written to disk at most this often, records in between may be lost if device loses power
+	private static final long SYNC_INTERVAL_MS = 2000;
+
+	private static final Object _lock = new Object();
+	private static long _lastSync = 0;
+	// Log is compacted once before the first append of a session, so that new records are never appended after a torn record
+	private static boolean _compacted = false;
+	// Directory of log instead of cache directory, used by tests
+	private static File _directory = null;
+
+	/**
+	 * Appends record to the end of log
+	 */
+	public static void append(JSONObject record) {
+		synchronized(_lock) {
+			File file = getLogFile();
+			if(file == null) return;
+
+			long validLength = -1;
+
+			try {
+				byte[] payload = record.toString().getBytes("UTF-8");
+				if(payload.length > MAX_RECORD_SIZE) {
+					UnityAdsDeviceLog.debug("Failed request of " + payload.length + " bytes is too large to be logged");
+					return;
+				}
+
+				if(!_compacted && file.exists()) {
+					compact(file, MAX_LOG_SIZE);
+				}
+				_compacted = true;
+
+				if(file.length() + RECORD_HEADER_SIZE + payload.length > MAX_LOG_SIZE) {
+					compact(file, MAX_LOG_SIZE / 2);
+				}
+
+				validLength = file.length();
+				FileOutputStream output = new FileOutputStream(file, true);
+
+				try {
+					DataOutputStream data = new DataOutputStream(output);
+					writeRecord(data, payload);
+					data.flush();
+
+					long now = SystemClock.elapsedRealtime();
+					if(now - _lastSync >= SYNC_INTERVAL_MS) {
+						output.getFD().sync();
+						_lastSync = now;
+					}
+				} finally {
+					output.close();
+				}
+			} catch(Exception e) {
+				UnityAdsDeviceLog.debug("Exception when writing failed request: " + e.getMessage());
+
+				if(validLength != -1) {
+					truncate(file, validLength);
+				}
+			}
+		}
+	}
+
+	// Removes a partly written record so that later records are not appended after it
+	private static void truncate(File file, long length) {
+		try {
+			RandomAccessFile output = new RandomAccessFile(file, "rw");
+
+			try {
+				if(output.length() > length) {
+					output.setLength(length);
+				}
+			} finally {
+				output.close();
+			}
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Could not remove partly written failed request: " + e.getMessage());
+
+			// Compacting drops the partly written record before the next append
+			_compacted = false;
+		}
+	}
+
+	/**
+	 * Reads all records and empties the log. Records of the JSON file written by older versions are
+	 * returned first.
+	 */
+	public static ArrayList<JSONObject> takeAll() {
+		ArrayList<JSONObject> records = new ArrayList<>();
+
+		synchronized(_lock) {
+			readLegacyFile(records);
+
+			File file = getLogFile();
+			if(file == null || !file.exists()) return records;
+
+			records.addAll(readRecords(file));
+
+			if(!file.delete()) {
+				UnityAdsDeviceLog.debug("Could not remove failed request log");
+			}
+		}
+
+		return records;
+	}
+
+	/**
+	 * Keeps log and legacy file in directory instead of cache directory, used by tests. Log is handled
+	 * as if a new session started.
+	 * @param directory Directory or null for cache directory
+	 */
+	static void setDirectory(File directory) {
+		synchronized(_lock) {
+			_directory = directory;
+			_compacted = false;
+		}
+	}
+
+	// Must be called while holding _lock
+	private static File getDirectory() {
+		if(_directory != null) return _directory;
+
+		String directory = UnityAdsCache.getCacheDirectory();
+		return directory != null ? new File(directory) : null;
+	}
+
+	// Must be called while holding _lock
+	private static File getLogFile() {
+		File directory = getDirectory();
+		if(directory == null) return null;
+
+		return new File(directory, UnityAdsConstants.PENDING_REQUESTS_LOG_FILENAME);
+	}
+
+	// Reads records until end of file or the first record that is incomplete or corrupted
+	private static ArrayList<JSONObject> readRecords(File file) {
+		ArrayList<JSONObject> records = new ArrayList<>();
+		DataInputStream input = null;
+
+		try {
+			input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+			while(true) {
+				int length;
+
+				try {
+					length = input.readInt();
+				} catch(EOFException e) {
+					break;
+				}
+
+				long checksum = input.readInt() & 0xffffffffL;
+
+				if(length <= 0 || length > MAX_RECORD_SIZE) {
+					UnityAdsDeviceLog.debug("Failed request log has invalid record length " + length + ", ignoring rest of log");
+					break;
+				}
+
+				byte[] payload = new byte[length];
+				input.readFully(payload);
+
+				CRC32 crc = new CRC32();
+				crc.update(payload);
+				if(crc.getValue() != checksum) {
+					UnityAdsDeviceLog.debug("Failed request log has corrupted record, ignoring rest of log");
+					break;
+				}
+
+				try {
+					records.add(new JSONObject(new String(payload, "UTF-8")));
+				} catch(Exception e) {
+					UnityAdsDeviceLog.debug("Failed request log has invalid record: " + e.getMessage());
+				}
+			}
+		} catch(EOFException e) {
+			UnityAdsDeviceLog.debug("Failed request log ends with incomplete record");
+		} catch(IOException e) {
+			UnityAdsDeviceLog.debug("Exception when reading failed request log: " + e.getMessage());
+		} finally {
+			if(input != null) {
+				try {
+					input.close();
+				} catch(IOException e) {
+					UnityAdsDeviceLog.debug("Could not close failed request log");
+				}
+			}
+		}
+
+		return records;
+	}
+
+	// Rewrites log with valid records only, dropping oldest records until log fits in size
+	private static void compact(File file, long size) {
+		ArrayList<byte[]> payloads = new ArrayList<>();
+		long totalSize = 0;
+
+		try {
+			for(JSONObject record : readRecords(file)) {
+				byte[] payload = record.toString().getBytes("UTF-8");
+				payloads.add(payload);
+				totalSize += RECORD_HEADER_SIZE + payload.length;
+			}
+
+			int dropped = 0;
+			while(totalSize > size && payloads.size() > 0) {
+				totalSize -= RECORD_HEADER_SIZE + payloads.remove(0).length;
+				dropped++;
+			}
+
+			File tempFile = new File(file.getPath() + ".tmp");
+			FileOutputStream output = new FileOutputStream(tempFile);
+
+			try {
+				DataOutputStream data = new DataOutputStream(output);
+				for(byte[] payload : payloads) {
+					writeRecord(data, payload);
+				}
+
+				data.flush();
+				output.getFD().sync();
+			} finally {
+				output.close();
+			}
+
+			if(!tempFile.renameTo(file)) {
+				UnityAdsDeviceLog.debug("Could not replace failed request log with compacted log");
+				return;
+			}
+
+			UnityAdsDeviceLog.debug("Compacted failed request log to " + payloads.size() + " requests, dropped " + dropped + " oldest");
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Exception when compacting failed request log: " + e.getMessage());
+		}
+	}
+
+	private static void writeRecord(DataOutputStream output, byte[] payload) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+
+		output.writeInt(payload.length);
+		output.writeInt((int)crc.getValue());
+		output.write(payload);
+	}
+
+	// Must be called while holding _lock
+	private static void readLegacyFile(ArrayList<JSONObject> records) {
+		File directory = getDirectory();
+		if(directory == null) return;
+
+		File legacyFile = new File(directory, UnityAdsConstants.PENDING_REQUESTS_FILENAME);
+		if(!legacyFile.exists()) return;
+
+		try {
+			String contents = UnityAdsUtils.readFile(legacyFile, true);
+			JSONArray pendingRequests = new JSONObject(contents).getJSONArray("data");
+
+			for(int i = 0; i < pendingRequests.length(); i++) {
+				records.add(pendingRequests.getJSONObject(i));
+			}
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Problems while reading old pending requests file: " + e.getMessage());
+		}
+
+		if(!legacyFile.delete()) {
+			UnityAdsDeviceLog.debug("Could not remove pending requests file");
+		}
+	}
+}
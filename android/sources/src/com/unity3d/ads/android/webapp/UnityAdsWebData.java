@@ -1,27 +1,22 @@
 package com.unity3d.ads.android.webapp;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.InputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.net.HttpURLConnection;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.net.UnknownHostException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 
-import javax.net.ssl.HttpsURLConnection;
-
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -42,9 +37,12 @@ import android.text.TextUtils;
 import com.unity3d.ads.android.UnityAdsDeviceLog;
 import com.unity3d.ads.android.UnityAdsUtils;
 import com.unity3d.ads.android.cache.UnityAdsCache;
+import com.unity3d.ads.android.cache.UnityAdsCacheStats;
 import com.unity3d.ads.android.campaign.UnityAdsCampaign;
 import com.unity3d.ads.android.campaign.UnityAdsCampaign.UnityAdsCampaignStatus;
+import com.unity3d.ads.android.data.UnityAdsBandwidthEstimator;
 import com.unity3d.ads.android.data.UnityAdsDevice;
+import com.unity3d.ads.android.data.UnityAdsHttpTransport;
 import com.unity3d.ads.android.item.UnityAdsRewardItemManager;
 import com.unity3d.ads.android.properties.UnityAdsConstants;
 import com.unity3d.ads.android.properties.UnityAdsProperties;
@@ -58,14 +56,16 @@ public class UnityAdsWebData {
 	private static JSONObject _campaignJson = null;
 	private static ArrayList<UnityAdsCampaign> _campaigns = null;
 	private static IUnityAdsWebDataListener _listener = null;
-	private static ArrayList<UnityAdsUrlLoader> _urlLoaders = null;
+	// Queued requests in lanes by request type, lanes are served in priority order
+	private static final EnumMap<UnityAdsRequestType, ArrayDeque<UnityAdsUrlLoader>> _urlLoaders = new EnumMap<>(UnityAdsRequestType.class);
+	private static final EnumMap<UnityAdsRequestType, Integer> _activeLoaders = new EnumMap<>(UnityAdsRequestType.class);
+	private static final EnumMap<UnityAdsRequestType, Integer> _peakQueueDepths = new EnumMap<>(UnityAdsRequestType.class);
 	private final static Object _urlLoaderLock = new Object();
 	private static UnityAdsZoneManager _zoneManager = null;
 	private static int _totalUrlsSent = 0;
 	private static int _totalLoadersCreated = 0;
 	private static int _totalLoadersHaveRun = 0;
 
-	private static boolean _isLoading = false;
 	private static boolean _initInProgress = false;
 
 	private static boolean _refreshAfterShowAds = false;
@@ -96,7 +96,8 @@ public class UnityAdsWebData {
 		}
 	}
 
-	private enum UnityAdsRequestType { Analytics, VideoPlan, VideoViewed, Unsent, AppWhitelist, InstalledApps;
+	// Declared in dispatch priority order
+	private enum UnityAdsRequestType { VideoPlan, AppWhitelist, VideoViewed, Analytics, InstalledApps, Unsent;
 		@SuppressLint("DefaultLocale")
 		@Override
 		public String toString () {
@@ -270,13 +271,18 @@ public class UnityAdsWebData {
 					queryParams = String.format(Locale.US, "%s&%s=%d", queryParams, UnityAdsConstants.UNITY_ADS_INIT_QUERYPARAM_ANDROIDNETWORKTYPE_KEY, UnityAdsDevice.getNetworkType());
 				}
 
-				if(UnityAdsProperties.CACHING_SPEED > 0) {
-					queryParams = String.format(Locale.US, "%s&%s=%d", queryParams, UnityAdsConstants.UNITY_ADS_INIT_QUERYPARAM_CACHINGSPEED_KEY, UnityAdsProperties.CACHING_SPEED);
+				long cachingSpeed = UnityAdsBandwidthEstimator.getEstimate();
+				if(cachingSpeed > 0) {
+					queryParams = String.format(Locale.US, "%s&%s=%d", queryParams, UnityAdsConstants.UNITY_ADS_INIT_QUERYPARAM_CACHINGSPEED_KEY, cachingSpeed);
 				}
 
 				queryParams = String.format(Locale.US, "%s&%s=%s", queryParams, UnityAdsConstants.UNITY_ADS_INIT_QUERYPARAM_SCREENSIZE_KEY, UnityAdsDevice.getScreenSize());
 				queryParams = String.format(Locale.US, "%s&%s=%s", queryParams, UnityAdsConstants.UNITY_ADS_INIT_QUERYPARAM_SCREENDENSITY_KEY, UnityAdsDevice.getScreenDensity());
 				queryParams = String.format(Locale.US, "%s&%s=%s", queryParams, UnityAdsConstants.UNITY_ADS_INIT_QUERYPARAM_CACHEDPLAYBACK_KEY, UnityAdsProperties.SELECTED_CAMPAIGN_CACHED ? "true" : "false");
+
+				if(position == UnityAdsVideoPosition.Start) {
+					queryParams = appendCacheStats(queryParams);
+				}
 			}
 			catch (Exception e) {
 				UnityAdsDeviceLog.error(String.format(Locale.US, "Problems creating campaigns query: %s", e.getMessage()));
@@ -292,7 +298,19 @@ public class UnityAdsWebData {
 			}
 
 			UnityAdsUrlLoaderCreator ulc = new UnityAdsUrlLoaderCreator(viewUrl, queryParams, UnityAdsConstants.UNITY_ADS_REQUEST_METHOD_POST, UnityAdsRequestType.VideoViewed, 0);
-			UnityAdsUtils.runOnUiThread(ulc);
+
+			// Backend needs start and end of a view right away, quartiles can wait for the next batch
+			if (position == UnityAdsVideoPosition.Start || position == UnityAdsVideoPosition.End) {
+				// Quartiles of the view are sent before its end, in the same radio wake-up
+				if (position == UnityAdsVideoPosition.End) {
+					UnityAdsEventBatcher.flush();
+				}
+
+				UnityAdsUtils.runOnUiThread(ulc);
+			} else {
+				ulc.setCompressBody(true);
+				UnityAdsEventBatcher.add(ulc);
+			}
 			
 			progressSent = true;
 		}
@@ -319,11 +337,43 @@ public class UnityAdsWebData {
 			if (currentZone.getGamerSid() != null)
 				analyticsUrl = String.format(Locale.US, "%s&%s=%s", analyticsUrl, UnityAdsConstants.UNITY_ADS_ANALYTICS_QUERYPARAM_GAMERSID_KEY, currentZone.getGamerSid());
 
+			analyticsUrl = appendCacheStats(analyticsUrl);
+
 			UnityAdsUrlLoaderCreator ulc = new UnityAdsUrlLoaderCreator(viewUrl, analyticsUrl, UnityAdsConstants.UNITY_ADS_REQUEST_METHOD_GET, UnityAdsRequestType.Analytics, 0);
-			UnityAdsUtils.runOnUiThread(ulc);
+			UnityAdsEventBatcher.add(ulc);
 		}
 	}
 
+	private static String appendCacheStats (String queryParams) {
+		UnityAdsCacheStats session = UnityAdsCacheStats.getSessionStats();
+		UnityAdsCacheStats total = UnityAdsCacheStats.getTotalStats();
+		String totalPrefix = UnityAdsConstants.UNITY_ADS_ANALYTICS_QUERYPARAM_TOTAL_PREFIX;
+
+		for (UnityAdsCacheStats stats : new UnityAdsCacheStats[] { session, total }) {
+			String prefix = stats == total ? totalPrefix : "";
+			queryParams = String.format(Locale.US, "%s&%s=%d", queryParams, statsKey(prefix, UnityAdsConstants.UNITY_ADS_ANALYTICS_QUERYPARAM_CACHEDSHOWS_KEY), stats.getCachedShows());
+			queryParams = String.format(Locale.US, "%s&%s=%d", queryParams, statsKey(prefix, UnityAdsConstants.UNITY_ADS_ANALYTICS_QUERYPARAM_STREAMEDSHOWS_KEY), stats.getStreamedShows());
+			queryParams = String.format(Locale.US, "%s&%s=%d", queryParams, statsKey(prefix, UnityAdsConstants.UNITY_ADS_ANALYTICS_QUERYPARAM_CACHEDOWNLOADEDBYTES_KEY), stats.getDownloadedBytes());
+			queryParams = String.format(Locale.US, "%s&%s=%d", queryParams, statsKey(prefix, UnityAdsConstants.UNITY_ADS_ANALYTICS_QUERYPARAM_CACHEWASTEDBYTES_KEY), stats.getWastedBytes());
+			queryParams = String.format(Locale.US, "%s&%s=%d", queryParams, statsKey(prefix, UnityAdsConstants.UNITY_ADS_ANALYTICS_QUERYPARAM_TIMETOCACHED_KEY), stats.getAverageTimeToCached());
+		}
+
+		return queryParams;
+	}
+
+	// cachedShows becomes totalCachedShows
+	private static String statsKey (String prefix, String key) {
+		if (prefix.length() == 0) return key;
+		return prefix + Character.toUpperCase(key.charAt(0)) + key.substring(1);
+	}
+
+	/**
+	 * Sends analytics events waiting for the next batch right away
+	 */
+	public static void flushEvents () {
+		UnityAdsEventBatcher.flush();
+	}
+
 	public static JSONObject getData () {
 		return _campaignJson;
 	}
@@ -396,23 +446,111 @@ public class UnityAdsWebData {
 		}
 	}
 
+	/**
+	 * @return Number of queued requests in each request lane
+	 */
+	public static Map<String, Integer> getRequestQueueDepths () {
+		HashMap<String, Integer> depths = new HashMap<>();
+
+		synchronized(_urlLoaderLock) {
+			for (UnityAdsRequestType lane : UnityAdsRequestType.values()) {
+				ArrayDeque<UnityAdsUrlLoader> loaders = _urlLoaders.get(lane);
+				depths.put(lane.toString(), loaders != null ? loaders.size() : 0);
+			}
+		}
+
+		return depths;
+	}
+
+	/**
+	 * @return Largest number of requests that have been queued at the same time in each request lane
+	 */
+	public static Map<String, Integer> getPeakRequestQueueDepths () {
+		HashMap<String, Integer> depths = new HashMap<>();
+
+		synchronized(_urlLoaderLock) {
+			for (UnityAdsRequestType lane : UnityAdsRequestType.values()) {
+				Integer depth = _peakQueueDepths.get(lane);
+				depths.put(lane.toString(), depth != null ? depth : 0);
+			}
+		}
+
+		return depths;
+	}
+
 	private static void addLoader (UnityAdsUrlLoader loader) {
 		synchronized(_urlLoaderLock) {
-			if (_urlLoaders == null)
-				_urlLoaders = new ArrayList<>();
+			ArrayDeque<UnityAdsUrlLoader> loaders = _urlLoaders.get(loader.getLane());
 
-			_urlLoaders.add(loader);
+			if (loaders == null) {
+				loaders = new ArrayDeque<>();
+				_urlLoaders.put(loader.getLane(), loaders);
+			}
+
+			loaders.add(loader);
+
+			Integer peakDepth = _peakQueueDepths.get(loader.getLane());
+			if (peakDepth == null || loaders.size() > peakDepth) {
+				_peakQueueDepths.put(loader.getLane(), loaders.size());
+			}
 		}
 	}
 
 	private static void startNextLoader () {
 		synchronized(_urlLoaderLock) {
-			if (_urlLoaders != null && _urlLoaders.size() > 0 && !_isLoading) {
-				UnityAdsDeviceLog.debug("Starting next URL loader");
-				_isLoading = true;
-				_urlLoaders.remove(0).execute();
+			UnityAdsUrlLoader loader;
+
+			while ((loader = nextLoader()) != null) {
+				_activeLoaders.put(loader.getLane(), getActiveLoaderCount(loader.getLane()) + 1);
+				UnityAdsDeviceLog.debug("Starting next URL loader from lane " + loader.getLane() + ", queued: " + _urlLoaders.get(loader.getLane()).size());
+				loader.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+			}
+		}
+	}
+
+	// Must be called while holding _urlLoaderLock
+	private static UnityAdsUrlLoader nextLoader () {
+		int activeLoaders = getActiveLoaderCount(null);
+
+		for (Map.Entry<UnityAdsRequestType, ArrayDeque<UnityAdsUrlLoader>> lane : _urlLoaders.entrySet()) {
+			if (lane.getValue().isEmpty()) continue;
+
+			// One connection is always left for ad plan requests and replayed requests share only one connection
+			int limit = UnityAdsProperties.MAX_CONCURRENT_REQUESTS;
+			if (lane.getKey() != UnityAdsRequestType.VideoPlan) limit--;
+			if (lane.getKey() == UnityAdsRequestType.Unsent && getActiveLoaderCount(UnityAdsRequestType.Unsent) > 0) continue;
+
+			if (activeLoaders < limit) {
+				return lane.getValue().poll();
 			}
 		}
+
+		return null;
+	}
+
+	// Must be called while holding _urlLoaderLock, lane null counts all lanes
+	private static int getActiveLoaderCount (UnityAdsRequestType lane) {
+		if (lane != null) {
+			Integer count = _activeLoaders.get(lane);
+			return count != null ? count : 0;
+		}
+
+		int count = 0;
+		for (Integer laneCount : _activeLoaders.values()) {
+			count += laneCount;
+		}
+
+		return count;
+	}
+
+	private static void loaderFinished (UnityAdsUrlLoader loader) {
+		if (loader != null) {
+			synchronized(_urlLoaderLock) {
+				_activeLoaders.put(loader.getLane(), Math.max(0, getActiveLoaderCount(loader.getLane()) - 1));
+			}
+		}
+
+		startNextLoader();
 	}
 
 	private static void urlLoadCompleted (UnityAdsUrlLoader loader) {
@@ -441,8 +579,7 @@ public class UnityAdsWebData {
 
 		_totalUrlsSent++;
 		UnityAdsDeviceLog.debug("Total urls sent: " + _totalUrlsSent);
-		_isLoading = false;
-		startNextLoader();
+		loaderFinished(loader);
 	}
 
 	private static void urlLoadFailed (UnityAdsUrlLoader loader) {
@@ -469,45 +606,24 @@ public class UnityAdsWebData {
 			UnityAdsDeviceLog.error("Got broken urlLoader!");
 		}
 
-		_isLoading = false;
-		startNextLoader();
+		loaderFinished(loader);
 	}
 
 	private static void checkFailedUrls () {
-		File pendingRequestFile = new File(UnityAdsCache.getCacheDirectory() + "/" + UnityAdsConstants.PENDING_REQUESTS_FILENAME);
-
-		if (pendingRequestFile.exists()) {
-			String contents;
-
-			synchronized(_urlLoaderLock) {
-				contents = UnityAdsUtils.readFile(pendingRequestFile, true);
-				boolean success = pendingRequestFile.delete();
-				if (!success) UnityAdsDeviceLog.debug("Could not remove pending requests file");
-			}
-
-			JSONObject pendingRequestsJson;
-			JSONArray pendingRequestsArray;
-
+		for (JSONObject failedUrl : UnityAdsRequestLog.takeAll()) {
 			try {
-				pendingRequestsJson = new JSONObject(contents);
-				pendingRequestsArray = pendingRequestsJson.getJSONArray("data");
-
-				if (pendingRequestsArray != null && pendingRequestsArray.length() > 0) {
-					for (int i = 0; i < pendingRequestsArray.length(); i++) {
-						JSONObject failedUrl = pendingRequestsArray.getJSONObject(i);
-						UnityAdsUrlLoaderCreator ulc = new UnityAdsUrlLoaderCreator(
-								failedUrl.getString(UnityAdsConstants.UNITY_ADS_FAILED_URL_URL_KEY), 
-								failedUrl.getString(UnityAdsConstants.UNITY_ADS_FAILED_URL_BODY_KEY), 
-								failedUrl.getString(UnityAdsConstants.UNITY_ADS_FAILED_URL_METHODTYPE_KEY), 
-								UnityAdsRequestType.getValueOf(failedUrl.getString(UnityAdsConstants.UNITY_ADS_FAILED_URL_REQUESTTYPE_KEY)), 
-								failedUrl.getInt(UnityAdsConstants.UNITY_ADS_FAILED_URL_RETRIES_KEY) + 1);
-						
-						UnityAdsUtils.runOnUiThread(ulc);
-					}
-				}
+				UnityAdsUrlLoaderCreator ulc = new UnityAdsUrlLoaderCreator(
+						failedUrl.getString(UnityAdsConstants.UNITY_ADS_FAILED_URL_URL_KEY),
+						failedUrl.getString(UnityAdsConstants.UNITY_ADS_FAILED_URL_BODY_KEY),
+						failedUrl.getString(UnityAdsConstants.UNITY_ADS_FAILED_URL_METHODTYPE_KEY),
+						UnityAdsRequestType.getValueOf(failedUrl.getString(UnityAdsConstants.UNITY_ADS_FAILED_URL_REQUESTTYPE_KEY)),
+						failedUrl.getInt(UnityAdsConstants.UNITY_ADS_FAILED_URL_RETRIES_KEY) + 1);
+
+				ulc.setCompressBody(true);
+				UnityAdsUtils.runOnUiThread(ulc);
 			}
 			catch (Exception e) {
-				UnityAdsDeviceLog.error("Problems while sending some of the failed urls.");
+				UnityAdsDeviceLog.error("Problems while sending failed url: " + e.getMessage());
 			}
 		}
 
@@ -517,52 +633,19 @@ public class UnityAdsWebData {
 	private static void writeFailedUrl (UnityAdsUrlLoader loader) {
 		if(loader == null) return;
 
-		synchronized(_urlLoaderLock) {
-			try {
-				File pendingRequestFile = new File(UnityAdsCache.getCacheDirectory() + "/" + UnityAdsConstants.PENDING_REQUESTS_FILENAME);
-
-				JSONObject pendingRequestsJson = null;
-				JSONArray pendingRequestsArray = null;
-				
-				if(pendingRequestFile.exists()) {
-					String contents = UnityAdsUtils.readFile(pendingRequestFile, true);
-
-					try {
-						pendingRequestsJson = new JSONObject(contents);
-						UnityAdsDeviceLog.debug("JNIDEBUG read json: " + pendingRequestsJson.toString());
-						pendingRequestsArray = pendingRequestsJson.getJSONArray("data");
-						UnityAdsDeviceLog.debug("JNIDEBUG read array: " + pendingRequestsArray.toString());
-					} catch(JSONException e) {
-						pendingRequestsJson = null;
-						pendingRequestsArray = null;
-					}
-				}
-
-				if(pendingRequestsArray == null) {
-					pendingRequestsArray = new JSONArray();
-				}
-
-				if(pendingRequestsJson == null) {
-					pendingRequestsJson = new JSONObject();
-				}
-
-				JSONObject failedUrl = new JSONObject();
-				failedUrl.put(UnityAdsConstants.UNITY_ADS_FAILED_URL_URL_KEY, loader.getBaseUrl());
-				failedUrl.put(UnityAdsConstants.UNITY_ADS_FAILED_URL_REQUESTTYPE_KEY, loader.getRequestType());
-				failedUrl.put(UnityAdsConstants.UNITY_ADS_FAILED_URL_METHODTYPE_KEY, loader.getHTTPMethod());
-				failedUrl.put(UnityAdsConstants.UNITY_ADS_FAILED_URL_BODY_KEY, loader.getQueryParams());				
-				failedUrl.put(UnityAdsConstants.UNITY_ADS_FAILED_URL_RETRIES_KEY, loader.getRetries());
+		if(!UnityAdsUtils.canUseExternalStorage()) return;
 
-				pendingRequestsArray.put(failedUrl);
-				pendingRequestsJson.put("data", pendingRequestsArray);
-
-				if(UnityAdsUtils.canUseExternalStorage()) {
-					boolean success = UnityAdsUtils.writeFile(pendingRequestFile, pendingRequestsJson.toString());
-					if (!success) UnityAdsDeviceLog.debug("Error while writing: " + pendingRequestFile.getName());
-				}
-			} catch(Exception e) {
-				UnityAdsDeviceLog.debug("Exception when writing failed url: " + e.getMessage());
-			}
+		try {
+			JSONObject failedUrl = new JSONObject();
+			failedUrl.put(UnityAdsConstants.UNITY_ADS_FAILED_URL_URL_KEY, loader.getBaseUrl());
+			failedUrl.put(UnityAdsConstants.UNITY_ADS_FAILED_URL_REQUESTTYPE_KEY, loader.getRequestType());
+			failedUrl.put(UnityAdsConstants.UNITY_ADS_FAILED_URL_METHODTYPE_KEY, loader.getHTTPMethod());
+			failedUrl.put(UnityAdsConstants.UNITY_ADS_FAILED_URL_BODY_KEY, loader.getQueryParams());
+			failedUrl.put(UnityAdsConstants.UNITY_ADS_FAILED_URL_RETRIES_KEY, loader.getRetries());
+
+			UnityAdsRequestLog.append(failedUrl);
+		} catch(Exception e) {
+			UnityAdsDeviceLog.debug("Exception when writing failed url: " + e.getMessage());
 		}
 	}
 
@@ -823,6 +906,7 @@ public class UnityAdsWebData {
 		if(appsJson != null) {
 			UnityAdsUrlLoaderCreator ulc = new UnityAdsUrlLoaderCreator(url, UnityAdsProperties.getCampaignQueryArguments(), UnityAdsConstants.UNITY_ADS_REQUEST_METHOD_POST, UnityAdsRequestType.InstalledApps, 0);
 			ulc.setPostBody(appsJson);
+			ulc.setCompressBody(true);
 			UnityAdsUtils.runOnUiThread(ulc);
 		} else {
 			UnityAdsDeviceLog.debug("Nothing to send for installed applications");
@@ -838,6 +922,7 @@ public class UnityAdsWebData {
 		private UnityAdsRequestType _requestType = null;
 		private int _retries = 0;
 		private String _postBody = null;
+		private boolean _compressBody = false;
 
 		public UnityAdsUrlLoaderCreator (String urlPart1, String urlPart2, String requestMethod, UnityAdsRequestType requestType, int retries) {
 			_url = urlPart1;
@@ -851,6 +936,10 @@ public class UnityAdsWebData {
 			_postBody = body;
 		}
 
+		public void setCompressBody(boolean compress) {
+			_compressBody = compress;
+		}
+
 		public void run () {
 			UnityAdsUrlLoader loader = new UnityAdsUrlLoader(_url, _queryParams, _requestMethod, _requestType, _retries);
 			UnityAdsDeviceLog.debug("URL: " + loader.getUrl());
@@ -859,6 +948,8 @@ public class UnityAdsWebData {
 				loader.setPostBody(_postBody);
 			}
 
+			loader.setCompressBody(_compressBody);
+
 			if (_retries <= UnityAdsProperties.MAX_NUMBER_OF_ANALYTICS_RETRIES)
 				addLoader(loader);
 
@@ -885,10 +976,12 @@ public class UnityAdsWebData {
 		private URL _url = null;
 		private HttpURLConnection _connection = null;
 		private int _downloadLength = 0;
-		private InputStream _input = null;
+		private UnityAdsHttpTransport.ResponseStream _input = null;
 		private BufferedInputStream _binput = null;
 		private String _urlData = "";
 		private UnityAdsRequestType _requestType = null;
+		// Lane is kept after clear() so that the dispatcher knows which lane finished
+		private final UnityAdsRequestType _lane;
 		private String _finalUrl = null;
 		private int _retries = 0;
 		private String _httpMethod = UnityAdsConstants.UNITY_ADS_REQUEST_METHOD_GET;
@@ -896,6 +989,7 @@ public class UnityAdsWebData {
 		private String _baseUrl = null;
 		private Boolean _done = false;
 		private String _postBody = null;
+		private boolean _compressBody = false;
 
 		public UnityAdsUrlLoader (String url, String queryParams, String httpMethod, UnityAdsRequestType requestType, int existingRetries) {
 			super();
@@ -918,6 +1012,7 @@ public class UnityAdsWebData {
 			_totalLoadersCreated++;
 			UnityAdsDeviceLog.debug("Total urlLoaders created: " + _totalLoadersCreated);
 			_requestType = requestType;
+			_lane = requestType != null ? requestType : UnityAdsRequestType.Unsent;
 			_retries = existingRetries;
 		}
 
@@ -949,6 +1044,10 @@ public class UnityAdsWebData {
 			return _requestType;
 		}
 
+		public UnityAdsRequestType getLane () {
+			return _lane;
+		}
+
 		public void setPostBody(String body) {
 			if(_queryParams != null && _queryParams.length() > 2) {
 				_finalUrl = _baseUrl + "?" + _queryParams;
@@ -962,6 +1061,13 @@ public class UnityAdsWebData {
 			_postBody = body;
 		}
 
+		/**
+		 * @param compress True if POST body may be gzipped when gzipped request bodies are enabled
+		 */
+		public void setCompressBody(boolean compress) {
+			_compressBody = compress;
+		}
+
 		public void clear () {
 			_url = null;
 			_downloadLength = 0;
@@ -982,15 +1088,7 @@ public class UnityAdsWebData {
 		@Override
 		protected String doInBackground(String... params) {
 			try {
-				if (_url.toString().startsWith("https://")) {
-					_connection = (HttpsURLConnection)_url.openConnection();
-				}
-				else {
-					_connection = (HttpURLConnection)_url.openConnection();
-				}
-
-				_connection.setConnectTimeout(20000);
-				_connection.setReadTimeout(30000);
+				_connection = UnityAdsHttpTransport.open(_url.toString(), 20000, 30000);
 				_connection.setRequestMethod(_httpMethod);
 				if(_postBody == null) {
 					_connection.setRequestProperty("Content-type", "application/x-www-form-urlencoded");
@@ -998,6 +1096,7 @@ public class UnityAdsWebData {
 					_connection.setRequestProperty("Content-type", "application/json");
 				}
 				_connection.setDoInput(true);
+				UnityAdsHttpTransport.acceptGzip(_connection);
 				
 				if (_httpMethod.equals(UnityAdsConstants.UNITY_ADS_REQUEST_METHOD_POST))
 					_connection.setDoOutput(true);
@@ -1011,13 +1110,8 @@ public class UnityAdsWebData {
 			if (_connection != null) {				
 				if (_httpMethod.equals(UnityAdsConstants.UNITY_ADS_REQUEST_METHOD_POST)) {
 					try {
-						PrintWriter pout = new PrintWriter(new OutputStreamWriter(_connection.getOutputStream(), "UTF-8"), true);
-						if(_postBody == null) {
-							pout.print(_queryParams);
-						} else {
-							pout.print(_postBody);
-						}
-						pout.flush();
+						String body = _postBody != null ? _postBody : String.valueOf(_queryParams);
+						UnityAdsHttpTransport.writeBody(_connection, body, _compressBody && UnityAdsProperties.GZIP_REQUEST_BODIES);
 					}
 					catch (Exception e) {
 						UnityAdsDeviceLog.error(String.format(Locale.US, "Problems writing post-data: %s, %s", e.getMessage(), Arrays.toString(e.getStackTrace())));
@@ -1026,9 +1120,11 @@ public class UnityAdsWebData {
 					}
 				}
 
+				long startTime = SystemClock.elapsedRealtime();
+
 				try {
 					UnityAdsDeviceLog.debug("Connection response: " + _connection.getResponseCode() + ", " + _connection.getResponseMessage() + ", " + _connection.getURL().toString() + " : " + _queryParams);
-					_input = _connection.getInputStream();
+					_input = UnityAdsHttpTransport.getResponseStream(_connection);
 					_binput = new BufferedInputStream(_input);
 				}
 				catch (Exception e) {
@@ -1045,19 +1141,15 @@ public class UnityAdsWebData {
 					UnityAdsDeviceLog.debug("Total urlLoaders that have started running: " + _totalLoadersHaveRun);
 					UnityAdsDeviceLog.debug("Reading data from: " + _url.toString() + " Content-length: " + _downloadLength);
 
-					ByteArrayOutputStream baos = new ByteArrayOutputStream();
-					int current;
-
-					while ((current = _binput.read()) != -1) {
-						total++;
-						baos.write(current);
-
-						if (isCancelled())
-							return null;
-					}
+					byte[] data = UnityAdsUtils.readStream(_binput, _downloadLength, this);
+					if (data == null)
+						return null;
 
-					_urlData = new String(baos.toByteArray());
-					UnityAdsDeviceLog.debug("Read total of: " + total);
+					total = data.length;
+					_urlData = new String(data, "UTF-8");
+					UnityAdsDeviceLog.debug("Read total of: " + total + ", " + _input.getWireBytes() + " bytes on the wire");
+					// Network speed is measured from bytes on the wire, compressed responses would look faster than they are
+					UnityAdsBandwidthEstimator.addSample(_input.getWireBytes(), SystemClock.elapsedRealtime() - startTime);
 				}
 				catch (Exception e) {
 					UnityAdsDeviceLog.error("Problems loading url! Error-message: " + e.getMessage());
@@ -0,0 +1,232 @@
+package com.unity3d.ads.android.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Random;
+
+import android.os.Debug;
+import android.os.Process;
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+
+import com.unity3d.ads.android.example.UnityAdsTestStartActivity;
+
+/**
+ * Compares the old stream based cache download loop with UnityAdsDownloadTask. Both download the same
+ * file from a local HTTP server that doesn't support ranges, so the task uses its single stream loop.
+ * Results are only logged because timings depend on the device.
+ */
+public class UnityAdsDownloadBenchmarkTest extends ActivityInstrumentationTestCase2<UnityAdsTestStartActivity> {
+	private static final String TAG = "UnityAdsBenchmark";
+	private static final int VIDEO_SIZE = 16 * 1024 * 1024;
+	private static final int ROUNDS = 5;
+
+	private byte[] _video;
+	private ServerSocket _server;
+	private Thread _serverThread;
+	private String _url;
+	private File _streamTarget;
+	private File _taskTarget;
+
+	public UnityAdsDownloadBenchmarkTest() {
+		super(UnityAdsTestStartActivity.class);
+	}
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+
+		_video = new byte[VIDEO_SIZE];
+		new Random(1).nextBytes(_video);
+
+		File directory = getActivity().getCacheDir();
+		_streamTarget = new File(directory, "UnityAds-benchmark-stream.mp4");
+		_taskTarget = new File(directory, "UnityAds-benchmark-task.mp4");
+
+		_server = new ServerSocket(0, 4, InetAddress.getByName("127.0.0.1"));
+		_url = "http://127.0.0.1:" + _server.getLocalPort() + "/benchmark.mp4";
+		_serverThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				serve();
+			}
+		});
+		_serverThread.start();
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		_server.close();
+		_serverThread.join();
+
+		deleteFile(_streamTarget);
+		deleteFile(_taskTarget);
+
+		super.tearDown();
+	}
+
+	public void testDownloadTaskAgainstStreamLoop() throws Exception {
+		// Warm up connections, both loops and the buffer pool before measuring
+		measure(new StreamDownload());
+		measure(new TaskDownload());
+
+		long streamTime = 0;
+		long taskTime = 0;
+		long streamAllocated = 0;
+		long taskAllocated = 0;
+
+		for(int i = 0; i < ROUNDS; i++) {
+			long[] result = measure(new StreamDownload());
+			streamTime += result[0];
+			streamAllocated += result[1];
+			assertContent(_streamTarget);
+
+			result = measure(new TaskDownload());
+			taskTime += result[0];
+			taskAllocated += result[1];
+			assertContent(_taskTarget);
+		}
+
+		Log.i(TAG, "Stream loop: " + (streamTime / ROUNDS) + "ms, " + (streamAllocated / ROUNDS) + " bytes allocated per download");
+		Log.i(TAG, "Download task: " + (taskTime / ROUNDS) + "ms, " + (taskAllocated / ROUNDS) + " bytes allocated per download");
+	}
+
+	/**
+	 * Runs download on a thread of its own, so that allocations of the server thread are not counted
+	 * and download task can lower its thread priority.
+	 *
+	 * @return Download time in milliseconds and bytes allocated by download thread
+	 */
+	@SuppressWarnings("deprecation")
+	private long[] measure(final Runnable download) throws InterruptedException {
+		final long[] result = new long[2];
+
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				Debug.startAllocCounting();
+				Debug.resetThreadAllocSize();
+				long start = SystemClock.elapsedRealtime();
+
+				download.run();
+
+				result[0] = SystemClock.elapsedRealtime() - start;
+				result[1] = Debug.getThreadAllocSize();
+				Debug.stopAllocCounting();
+			}
+		});
+
+		thread.start();
+		thread.join();
+
+		return result;
+	}
+
+	private void assertContent(File file) throws IOException {
+		assertEquals(VIDEO_SIZE, file.length());
+
+		byte[] content = new byte[VIDEO_SIZE];
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+
+		try {
+			input.readFully(content);
+		} finally {
+			input.close();
+		}
+
+		assertTrue("Downloaded content differs from served content", Arrays.equals(_video, content));
+		deleteFile(file);
+	}
+
+	private void deleteFile(File file) {
+		if(file.exists()) {
+			assertTrue(file.delete());
+		}
+	}
+
+	private void serve() {
+		while(!_server.isClosed()) {
+			Socket socket = null;
+
+			try {
+				socket = _server.accept();
+
+				BufferedReader request = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+				String line;
+				while((line = request.readLine()) != null && line.length() > 0) {
+					// Request headers are not needed
+				}
+
+				// No Accept-Ranges header, so download task doesn't split the download into segments
+				OutputStream output = socket.getOutputStream();
+				output.write(("HTTP/1.1 200 OK\r\nContent-Type: video/mp4\r\nContent-Length: " + VIDEO_SIZE + "\r\nConnection: close\r\n\r\n").getBytes("US-ASCII"));
+				output.write(_video);
+				output.flush();
+			} catch(IOException e) {
+				if(!_server.isClosed()) {
+					Log.e(TAG, "Benchmark server failed", e);
+				}
+			} finally {
+				if(socket != null) {
+					try {
+						socket.close();
+					} catch(IOException e) {
+						Log.e(TAG, "Couldn't close benchmark connection", e);
+					}
+				}
+			}
+		}
+	}
+
+	// Download loop before pooled buffers
+	private class StreamDownload implements Runnable {
+		@Override
+		public void run() {
+			Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+			try {
+				HttpURLConnection conn = (HttpURLConnection)new URL(_url).openConnection();
+				conn.connect();
+
+				BufferedOutputStream output = new BufferedOutputStream(new FileOutputStream(_streamTarget));
+				BufferedInputStream input = new BufferedInputStream(conn.getInputStream());
+
+				byte data[] = new byte[4096];
+				int count;
+
+				while((count = input.read(data)) != -1) {
+					output.write(data, 0, count);
+				}
+
+				output.flush();
+				output.close();
+				input.close();
+			} catch(IOException e) {
+				Log.e(TAG, "Stream download failed", e);
+			}
+		}
+	}
+
+	// Same path as a cache download of the video that is being streamed, which is never throttled
+	private class TaskDownload implements Runnable {
+		@Override
+		public void run() {
+			UnityAdsDownloadJob job = new UnityAdsDownloadJob(_url, _taskTarget.getAbsolutePath(), VIDEO_SIZE, null, UnityAdsCache.PRIORITY_STREAMING_CAMPAIGN, 0);
+			new UnityAdsDownloadTask(job).run();
+		}
+	}
+}
@@ -0,0 +1,269 @@
+package com.unity3d.ads.android.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import android.test.ActivityInstrumentationTestCase2;
+
+import com.unity3d.ads.android.example.UnityAdsTestStartActivity;
+import com.unity3d.ads.android.properties.UnityAdsConstants;
+
+/**
+ * Runs UnityAdsFaststart on small synthetic MP4 files. Media data is random bytes and chunk offsets
+ * point to known places in it, so a relocated file can be checked by reading the chunks at the new offsets.
+ */
+public class UnityAdsFaststartTest extends ActivityInstrumentationTestCase2<UnityAdsTestStartActivity> {
+	private static final int FTYP_SIZE = 16;
+	private static final int MDAT_PAYLOAD_SIZE = 100;
+
+	private File _file;
+	private byte[] _payload;
+
+	public UnityAdsFaststartTest() {
+		super(UnityAdsTestStartActivity.class);
+	}
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		_file = File.createTempFile("UnityAdsFaststartTest", ".mp4");
+		_payload = new byte[MDAT_PAYLOAD_SIZE];
+		new Random(1).nextBytes(_payload);
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		if(_file.exists()) {
+			assertTrue(_file.delete());
+		}
+
+		super.tearDown();
+	}
+
+	public void testMoovInFrontUnchanged() throws Exception {
+		int mdatPayload = FTYP_SIZE + atom("moov", stbl("stco", new long[] { 0 })).length + 8;
+		byte[] original = concat(ftyp(), atom("moov", stbl("stco", new long[] { mdatPayload })), atom("mdat", _payload));
+		write(original);
+
+		assertEquals(UnityAdsFaststart.UNCHANGED, UnityAdsFaststart.process(_file));
+		assertTrue(Arrays.equals(original, read()));
+	}
+
+	public void testMoovAfterMdatRelocated() throws Exception {
+		int mdatPayload = FTYP_SIZE + 8;
+		long[] offsets = { mdatPayload, mdatPayload + 50 };
+		byte[] moov = atom("moov", stbl("stco", offsets));
+		write(concat(ftyp(), atom("mdat", _payload), moov));
+
+		assertEquals(UnityAdsFaststart.RELOCATED, UnityAdsFaststart.process(_file));
+
+		byte[] relocated = read();
+		assertEquals(FTYP_SIZE + 8 + MDAT_PAYLOAD_SIZE + moov.length, relocated.length);
+		assertEquals("moov", typeAt(relocated, FTYP_SIZE));
+		assertEquals("mdat", typeAt(relocated, FTYP_SIZE + moov.length));
+		assertFalse(new File(_file.getPath() + UnityAdsConstants.CACHE_FASTSTART_FILE_SUFFIX).exists());
+
+		long[] patched = readOffsets(relocated, "stco");
+		assertEquals(offsets.length, patched.length);
+
+		for(int i = 0; i < offsets.length; i++) {
+			assertEquals(offsets[i] + moov.length, patched[i]);
+			assertChunk(relocated, patched[i], (int)(offsets[i] - mdatPayload));
+		}
+	}
+
+	public void testCo64OffsetsPatched() throws Exception {
+		int mdatPayload = FTYP_SIZE + 8;
+		byte[] free = atom("free", new byte[20]);
+		int moovSize = atom("moov", stbl("co64", new long[] { 0, 0, 0 })).length;
+		long freePayload = FTYP_SIZE + 8 + MDAT_PAYLOAD_SIZE + moovSize + 8;
+
+		// Offsets in front of mdat and after moov stay where they are
+		long[] offsets = { mdatPayload + 10, 0, freePayload };
+		byte[] moov = atom("moov", stbl("co64", offsets));
+		assertEquals(moovSize, moov.length);
+		write(concat(ftyp(), atom("mdat", _payload), moov, free));
+
+		assertEquals(UnityAdsFaststart.RELOCATED, UnityAdsFaststart.process(_file));
+
+		byte[] relocated = read();
+		long[] patched = readOffsets(relocated, "co64");
+		assertEquals(mdatPayload + 10 + moovSize, patched[0]);
+		assertEquals(0, patched[1]);
+		assertEquals(freePayload, patched[2]);
+		assertChunk(relocated, patched[0], 10);
+		assertEquals("free", typeAt(relocated, (int)freePayload - 8));
+	}
+
+	public void testLargeAtomSizeRelocated() throws Exception {
+		// mdat with 64-bit size has a 16 byte header
+		ByteBuffer mdat = ByteBuffer.allocate(16 + MDAT_PAYLOAD_SIZE);
+		mdat.putInt(1);
+		mdat.put("mdat".getBytes("US-ASCII"));
+		mdat.putLong(16 + MDAT_PAYLOAD_SIZE);
+		mdat.put(_payload);
+
+		int mdatPayload = FTYP_SIZE + 16;
+		byte[] moov = atom("moov", stbl("stco", new long[] { mdatPayload }));
+		write(concat(ftyp(), mdat.array(), moov));
+
+		assertEquals(UnityAdsFaststart.RELOCATED, UnityAdsFaststart.process(_file));
+
+		byte[] relocated = read();
+		assertEquals("moov", typeAt(relocated, FTYP_SIZE));
+		assertEquals("mdat", typeAt(relocated, FTYP_SIZE + moov.length));
+
+		long[] patched = readOffsets(relocated, "stco");
+		assertEquals(mdatPayload + moov.length, patched[0]);
+		assertChunk(relocated, patched[0], 0);
+	}
+
+	public void testCompressedMoovUnchanged() throws Exception {
+		byte[] original = concat(ftyp(), atom("mdat", _payload), atom("moov", atom("cmov", new byte[16])));
+		write(original);
+
+		assertEquals(UnityAdsFaststart.UNCHANGED, UnityAdsFaststart.process(_file));
+		assertTrue(Arrays.equals(original, read()));
+	}
+
+	public void testInvalidAtomUnchanged() throws Exception {
+		byte[] original = concat(ftyp(), atom("mdat", _payload), atom("moov", stbl("stco", new long[] { FTYP_SIZE + 8 })));
+
+		// Size of mdat runs past the end of file
+		ByteBuffer.wrap(original).putInt(FTYP_SIZE, original.length);
+		write(original);
+
+		assertEquals(UnityAdsFaststart.UNCHANGED, UnityAdsFaststart.process(_file));
+		assertTrue(Arrays.equals(original, read()));
+	}
+
+	public void testLargeMoovUnchanged() throws Exception {
+		byte[] moov = atom("moov", concat(stbl("stco", new long[] { FTYP_SIZE + 8 }), atom("free", new byte[4 * 1024 * 1024])));
+		byte[] original = concat(ftyp(), atom("mdat", _payload), moov);
+		write(original);
+
+		assertEquals(UnityAdsFaststart.UNCHANGED, UnityAdsFaststart.process(_file));
+		assertTrue(Arrays.equals(original, read()));
+	}
+
+	public void testLargeFileUnchanged() throws Exception {
+		long mdatSize = 64 * 1024 * 1024;
+		byte[] moov = atom("moov", stbl("stco", new long[] { FTYP_SIZE + 8 }));
+
+		// Media data is left as a hole in the file, only atom headers are written
+		RandomAccessFile output = new RandomAccessFile(_file, "rw");
+		try {
+			output.write(ftyp());
+			output.writeInt((int)mdatSize);
+			output.write("mdat".getBytes("US-ASCII"));
+			output.seek(FTYP_SIZE + mdatSize);
+			output.write(moov);
+		} finally {
+			output.close();
+		}
+
+		assertEquals(UnityAdsFaststart.UNCHANGED, UnityAdsFaststart.process(_file));
+		assertEquals(FTYP_SIZE + mdatSize + moov.length, _file.length());
+		assertFalse(new File(_file.getPath() + UnityAdsConstants.CACHE_FASTSTART_FILE_SUFFIX).exists());
+	}
+
+	private void assertChunk(byte[] data, long offset, int payloadOffset) {
+		for(int i = payloadOffset; i < Math.min(payloadOffset + 16, MDAT_PAYLOAD_SIZE); i++) {
+			assertEquals("Chunk at " + offset + " differs", _payload[i], data[(int)offset + i - payloadOffset]);
+		}
+	}
+
+	private static byte[] ftyp() throws IOException {
+		return atom("ftyp", "isom\0\0\0\0".getBytes("US-ASCII"));
+	}
+
+	// moov child atoms down to a stbl that has a single stco or co64 table
+	private static byte[] stbl(String type, long[] offsets) throws IOException {
+		boolean largeOffsets = type.equals("co64");
+		ByteBuffer table = ByteBuffer.allocate(8 + offsets.length * (largeOffsets ? 8 : 4));
+		table.putInt(0);
+		table.putInt(offsets.length);
+
+		for(long offset : offsets) {
+			if(largeOffsets) {
+				table.putLong(offset);
+			} else {
+				table.putInt((int)offset);
+			}
+		}
+
+		return atom("trak", atom("mdia", atom("minf", atom("stbl", atom(type, table.array())))));
+	}
+
+	private static byte[] atom(String type, byte[] payload) throws IOException {
+		ByteBuffer atom = ByteBuffer.allocate(8 + payload.length);
+		atom.putInt(8 + payload.length);
+		atom.put(type.getBytes("US-ASCII"));
+		atom.put(payload);
+		return atom.array();
+	}
+
+	private static byte[] concat(byte[]... parts) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		for(byte[] part : parts) {
+			output.write(part);
+		}
+
+		return output.toByteArray();
+	}
+
+	private static String typeAt(byte[] data, int position) throws IOException {
+		return new String(data, position + 4, 4, "US-ASCII");
+	}
+
+	private static long[] readOffsets(byte[] data, String type) throws IOException {
+		byte[] typeBytes = type.getBytes("US-ASCII");
+		int position = -1;
+
+		for(int i = 0; i + 4 <= data.length && position == -1; i++) {
+			if(data[i] == typeBytes[0] && data[i + 1] == typeBytes[1] && data[i + 2] == typeBytes[2] && data[i + 3] == typeBytes[3]) {
+				position = i;
+			}
+		}
+
+		assertTrue(type + " not found", position != -1);
+
+		ByteBuffer table = ByteBuffer.wrap(data, position + 8, data.length - position - 8);
+		long[] offsets = new long[table.getInt()];
+
+		for(int i = 0; i < offsets.length; i++) {
+			offsets[i] = type.equals("co64") ? table.getLong() : table.getInt() & 0xffffffffL;
+		}
+
+		return offsets;
+	}
+
+	private void write(byte[] data) throws IOException {
+		RandomAccessFile output = new RandomAccessFile(_file, "rw");
+
+		try {
+			output.setLength(0);
+			output.write(data);
+		} finally {
+			output.close();
+		}
+	}
+
+	private byte[] read() throws IOException {
+		RandomAccessFile input = new RandomAccessFile(_file, "r");
+
+		try {
+			byte[] data = new byte[(int)input.length()];
+			input.readFully(data);
+			return data;
+		} finally {
+			input.close();
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package com.unity3d.ads.android.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import android.test.ActivityInstrumentationTestCase2;
+
+import com.unity3d.ads.android.example.UnityAdsTestStartActivity;
+
+public class UnityAdsMp4PrefixTest extends ActivityInstrumentationTestCase2<UnityAdsTestStartActivity> {
+	private static final int FTYP_SIZE = 16;
+	private static final int MDAT_SIZE = 10000;
+	private static final int SECONDS = 2;
+
+	private File _file;
+
+	public UnityAdsMp4PrefixTest() {
+		super(UnityAdsTestStartActivity.class);
+	}
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		_file = File.createTempFile("UnityAdsMp4PrefixTest", ".mp4");
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		if(_file.exists()) {
+			assertTrue(_file.delete());
+		}
+
+		super.tearDown();
+	}
+
+	public void testFaststartPrefix() throws Exception {
+		byte[] moov = atom("moov", mvhd(0, 1000, 10000));
+		byte[] data = concat(ftyp(), moov, atom("mdat", new byte[MDAT_SIZE]));
+		write(data);
+
+		// 10 second video, so a second is a tenth of the file
+		long moovEnd = FTYP_SIZE + moov.length;
+		assertEquals(moovEnd + SECONDS * (data.length / 10), UnityAdsMp4Prefix.findPrefixEnd(_file, data.length, data.length, SECONDS));
+	}
+
+	public void testVersion1Duration() throws Exception {
+		byte[] moov = atom("moov", mvhd(1, 600, 6000));
+		byte[] data = concat(ftyp(), moov, atom("mdat", new byte[MDAT_SIZE]));
+		write(data);
+
+		long moovEnd = FTYP_SIZE + moov.length;
+		assertEquals(moovEnd + SECONDS * (data.length / 10), UnityAdsMp4Prefix.findPrefixEnd(_file, data.length, data.length, SECONDS));
+	}
+
+	public void testPrefixIsAvailableOnceMoovIs() throws Exception {
+		byte[] moov = atom("moov", mvhd(0, 1000, 10000));
+		byte[] data = concat(ftyp(), moov, atom("mdat", new byte[MDAT_SIZE]));
+		write(data);
+
+		long moovEnd = FTYP_SIZE + moov.length;
+		assertEquals(UnityAdsMp4Prefix.PREFIX_UNKNOWN, UnityAdsMp4Prefix.findPrefixEnd(_file, 4, data.length, SECONDS));
+		assertEquals(UnityAdsMp4Prefix.PREFIX_UNKNOWN, UnityAdsMp4Prefix.findPrefixEnd(_file, FTYP_SIZE, data.length, SECONDS));
+		assertEquals(UnityAdsMp4Prefix.PREFIX_UNKNOWN, UnityAdsMp4Prefix.findPrefixEnd(_file, moovEnd - 1, data.length, SECONDS));
+		assertTrue(UnityAdsMp4Prefix.findPrefixEnd(_file, moovEnd, data.length, SECONDS) > moovEnd);
+	}
+
+	public void testPrefixLimitedToFileSize() throws Exception {
+		byte[] data = concat(ftyp(), atom("moov", mvhd(0, 1000, 10000)), atom("mdat", new byte[MDAT_SIZE]));
+		write(data);
+
+		assertEquals(data.length, UnityAdsMp4Prefix.findPrefixEnd(_file, data.length, data.length, 60));
+	}
+
+	public void testMoovWithoutDuration() throws Exception {
+		byte[] moov = atom("moov", atom("trak", new byte[16]));
+		byte[] data = concat(ftyp(), moov, atom("mdat", new byte[MDAT_SIZE]));
+		write(data);
+
+		assertEquals(FTYP_SIZE + moov.length, UnityAdsMp4Prefix.findPrefixEnd(_file, data.length, data.length, SECONDS));
+	}
+
+	public void testMdatBeforeMoovUnsupported() throws Exception {
+		byte[] data = concat(ftyp(), atom("mdat", new byte[MDAT_SIZE]), atom("moov", mvhd(0, 1000, 10000)));
+		write(data);
+
+		assertEquals(UnityAdsMp4Prefix.PREFIX_UNSUPPORTED, UnityAdsMp4Prefix.findPrefixEnd(_file, data.length, data.length, SECONDS));
+
+		// Known as soon as the mdat header is there
+		assertEquals(UnityAdsMp4Prefix.PREFIX_UNSUPPORTED, UnityAdsMp4Prefix.findPrefixEnd(_file, FTYP_SIZE + 8, data.length, SECONDS));
+	}
+
+	public void testLargeAtomSize() throws Exception {
+		// free atom with 64-bit size and a 16 byte header in front of moov
+		ByteBuffer free = ByteBuffer.allocate(32);
+		free.putInt(1);
+		free.put("free".getBytes("US-ASCII"));
+		free.putLong(32);
+
+		byte[] moov = atom("moov", mvhd(0, 1000, 10000));
+		byte[] data = concat(ftyp(), free.array(), moov, atom("mdat", new byte[MDAT_SIZE]));
+		write(data);
+
+		// 64-bit size isn't there yet
+		assertEquals(UnityAdsMp4Prefix.PREFIX_UNKNOWN, UnityAdsMp4Prefix.findPrefixEnd(_file, FTYP_SIZE + 12, data.length, SECONDS));
+
+		long moovEnd = FTYP_SIZE + 32 + moov.length;
+		assertEquals(moovEnd + SECONDS * (data.length / 10), UnityAdsMp4Prefix.findPrefixEnd(_file, data.length, data.length, SECONDS));
+	}
+
+	public void testInvalidAtomSizeUnsupported() throws Exception {
+		byte[] data = concat(ftyp(), atom("moov", mvhd(0, 1000, 10000)), atom("mdat", new byte[MDAT_SIZE]));
+
+		// Atom can't be smaller than its header
+		ByteBuffer.wrap(data).putInt(FTYP_SIZE, 4);
+		write(data);
+
+		assertEquals(UnityAdsMp4Prefix.PREFIX_UNSUPPORTED, UnityAdsMp4Prefix.findPrefixEnd(_file, data.length, data.length, SECONDS));
+	}
+
+	public void testTruncatedFileUnsupported() throws Exception {
+		byte[] data = concat(ftyp(), atom("free", new byte[8]));
+		write(data);
+
+		// Journal says more bytes are there than file has, reading the next atom header fails
+		assertEquals(UnityAdsMp4Prefix.PREFIX_UNSUPPORTED, UnityAdsMp4Prefix.findPrefixEnd(_file, data.length + 100, data.length + 1000, SECONDS));
+	}
+
+	private static byte[] ftyp() throws IOException {
+		return atom("ftyp", "isom\0\0\0\0".getBytes("US-ASCII"));
+	}
+
+	private static byte[] mvhd(int version, int timescale, long duration) throws IOException {
+		ByteBuffer mvhd = ByteBuffer.allocate(version == 1 ? 112 : 100);
+		mvhd.put((byte)version);
+		mvhd.put(new byte[3]);
+
+		if(version == 1) {
+			mvhd.putLong(0);
+			mvhd.putLong(0);
+			mvhd.putInt(timescale);
+			mvhd.putLong(duration);
+		} else {
+			mvhd.putInt(0);
+			mvhd.putInt(0);
+			mvhd.putInt(timescale);
+			mvhd.putInt((int)duration);
+		}
+
+		return atom("mvhd", mvhd.array());
+	}
+
+	private static byte[] atom(String type, byte[] payload) throws IOException {
+		ByteBuffer atom = ByteBuffer.allocate(8 + payload.length);
+		atom.putInt(8 + payload.length);
+		atom.put(type.getBytes("US-ASCII"));
+		atom.put(payload);
+		return atom.array();
+	}
+
+	private static byte[] concat(byte[]... parts) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		for(byte[] part : parts) {
+			output.write(part);
+		}
+
+		return output.toByteArray();
+	}
+
+	private void write(byte[] data) throws IOException {
+		RandomAccessFile output = new RandomAccessFile(_file, "rw");
+
+		try {
+			output.setLength(0);
+			output.write(data);
+		} finally {
+			output.close();
+		}
+	}
+}
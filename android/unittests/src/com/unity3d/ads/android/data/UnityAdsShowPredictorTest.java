@@ -0,0 +1,81 @@
+package com.unity3d.ads.android.data;
+
+import android.test.ActivityInstrumentationTestCase2;
+
+import com.unity3d.ads.android.example.UnityAdsTestStartActivity;
+
+public class UnityAdsShowPredictorTest extends ActivityInstrumentationTestCase2<UnityAdsTestStartActivity> {
+	private static final long START = 1000000;
+
+	public UnityAdsShowPredictorTest() {
+		super(UnityAdsTestStartActivity.class);
+	}
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		UnityAdsShowPredictor.clear();
+	}
+
+	public void testTooFewSamples() {
+		recordFirstShows(10000, 20000);
+
+		UnityAdsShowPredictor.sessionStarted(START);
+		assertEquals(-1, UnityAdsShowPredictor.getNextShowTime(START));
+	}
+
+	public void testFirstShowPercentile() {
+		recordFirstShows(40000, 10000, 30000, 20000, 50000);
+
+		// 25th percentile of 10, 20, 30, 40 and 50 seconds
+		UnityAdsShowPredictor.sessionStarted(START);
+		assertEquals(START + 20000, UnityAdsShowPredictor.getNextShowTime(START));
+		assertEquals(START + 20000, UnityAdsShowPredictor.getNextShowTime(START + 19999));
+	}
+
+	public void testIntervalPercentile() {
+		UnityAdsShowPredictor.sessionStarted(START);
+		long now = START + 1000;
+		UnityAdsShowPredictor.showStarted(now);
+
+		for(long interval : new long[] { 70000, 50000, 60000, 90000, 80000 }) {
+			now += interval;
+			UnityAdsShowPredictor.showStarted(now);
+		}
+
+		// After a show the next one is predicted from intervals, not from first shows
+		assertEquals(now + 60000, UnityAdsShowPredictor.getNextShowTime(now));
+	}
+
+	public void testPassedPrediction() {
+		recordFirstShows(10000, 20000, 30000);
+
+		UnityAdsShowPredictor.sessionStarted(START);
+		assertEquals(START + 10000, UnityAdsShowPredictor.getNextShowTime(START + 5000));
+		assertEquals(-1, UnityAdsShowPredictor.getNextShowTime(START + 10000));
+		assertEquals(-1, UnityAdsShowPredictor.getNextShowTime(START + 60000));
+	}
+
+	public void testOldestSamplesDropped() {
+		long[] oldShows = new long[20];
+		long[] newShows = new long[20];
+
+		for(int i = 0; i < oldShows.length; i++) {
+			oldShows[i] = 1000;
+			newShows[i] = 100000;
+		}
+
+		recordFirstShows(oldShows);
+		recordFirstShows(newShows);
+
+		UnityAdsShowPredictor.sessionStarted(START);
+		assertEquals(START + 100000, UnityAdsShowPredictor.getNextShowTime(START));
+	}
+
+	private void recordFirstShows(long... delays) {
+		for(long delay : delays) {
+			UnityAdsShowPredictor.sessionStarted(START);
+			UnityAdsShowPredictor.showStarted(START + delay);
+		}
+	}
+}
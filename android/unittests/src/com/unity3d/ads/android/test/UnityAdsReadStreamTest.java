@@ -0,0 +1,112 @@
+package com.unity3d.ads.android.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import android.os.AsyncTask;
+import android.test.ActivityInstrumentationTestCase2;
+
+import com.unity3d.ads.android.UnityAdsUtils;
+import com.unity3d.ads.android.example.UnityAdsTestStartActivity;
+
+public class UnityAdsReadStreamTest extends ActivityInstrumentationTestCase2<UnityAdsTestStartActivity> {
+	private static final int CHUNK_SIZE = 8192;
+
+	public UnityAdsReadStreamTest() {
+		super(UnityAdsTestStartActivity.class);
+	}
+
+	public void testKnownLength() throws Exception {
+		byte[] response = createResponse(100000);
+
+		assertTrue(Arrays.equals(response, UnityAdsUtils.readStream(new ByteArrayInputStream(response), response.length, null)));
+	}
+
+	public void testUnknownLengthAndMultibyteCharacters() throws Exception {
+		String text = "{\"campaigns\":[{\"name\":\"äöü 日本\"}]}";
+		byte[] response = text.getBytes("UTF-8");
+
+		assertEquals(text, new String(UnityAdsUtils.readStream(new ByteArrayInputStream(response), -1, null), "UTF-8"));
+		assertEquals(text, new String(UnityAdsUtils.readStream(new ByteArrayInputStream(response), 0, null), "UTF-8"));
+	}
+
+	public void testEmptyResponse() throws Exception {
+		assertEquals(0, UnityAdsUtils.readStream(new ByteArrayInputStream(new byte[0]), -1, null).length);
+	}
+
+	public void testContentLengthSmallerThanResponse() throws Exception {
+		byte[] response = createResponse(100000);
+
+		assertTrue(Arrays.equals(response, UnityAdsUtils.readStream(new ByteArrayInputStream(response), 10, null)));
+	}
+
+	public void testContentLengthLargerThanResponse() throws Exception {
+		byte[] response = createResponse(1000);
+
+		// Buffer is not sized by Content-Length beyond 4MB, so this doesn't run out of memory
+		assertTrue(Arrays.equals(response, UnityAdsUtils.readStream(new ByteArrayInputStream(response), Integer.MAX_VALUE, null)));
+	}
+
+	public void testShortReads() throws Exception {
+		final byte[] response = createResponse(20000);
+
+		// Network streams often return less than asked for
+		InputStream input = new ByteArrayInputStream(response) {
+			@Override
+			public synchronized int read(byte[] buffer, int offset, int length) {
+				return super.read(buffer, offset, Math.min(length, 7));
+			}
+		};
+
+		assertTrue(Arrays.equals(response, UnityAdsUtils.readStream(input, response.length, null)));
+	}
+
+	public void testCancelBetweenChunks() throws Exception {
+		final AsyncTask<Void, Void, Void> task = new AsyncTask<Void, Void, Void>() {
+			@Override
+			protected Void doInBackground(Void... params) {
+				return null;
+			}
+		};
+
+		final int[] reads = new int[1];
+		InputStream input = new ByteArrayInputStream(createResponse(10 * CHUNK_SIZE)) {
+			@Override
+			public synchronized int read(byte[] buffer, int offset, int length) {
+				reads[0]++;
+
+				// Task is cancelled while the first chunk is being read
+				task.cancel(false);
+				return super.read(buffer, offset, length);
+			}
+		};
+
+		assertNull(UnityAdsUtils.readStream(input, 10 * CHUNK_SIZE, task));
+		assertEquals(1, reads[0]);
+	}
+
+	public void testReadError() throws Exception {
+		InputStream input = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("Connection reset");
+			}
+		};
+
+		try {
+			UnityAdsUtils.readStream(input, -1, null);
+			fail("Read error should be thrown to caller");
+		} catch(IOException e) {
+			assertEquals("Connection reset", e.getMessage());
+		}
+	}
+
+	private byte[] createResponse(int size) {
+		byte[] response = new byte[size];
+		new Random(size).nextBytes(response);
+		return response;
+	}
+}
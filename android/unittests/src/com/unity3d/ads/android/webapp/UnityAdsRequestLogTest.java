@@ -0,0 +1,187 @@
+package com.unity3d.ads.android.webapp;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import android.test.ActivityInstrumentationTestCase2;
+
+import com.unity3d.ads.android.example.UnityAdsTestStartActivity;
+import com.unity3d.ads.android.properties.UnityAdsConstants;
+
+public class UnityAdsRequestLogTest extends ActivityInstrumentationTestCase2<UnityAdsTestStartActivity> {
+	private File _directory;
+	private File _logFile;
+
+	public UnityAdsRequestLogTest() {
+		super(UnityAdsTestStartActivity.class);
+	}
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+
+		_directory = File.createTempFile("UnityAdsRequestLogTest", "");
+		assertTrue(_directory.delete());
+		assertTrue(_directory.mkdir());
+		_logFile = new File(_directory, UnityAdsConstants.PENDING_REQUESTS_LOG_FILENAME);
+
+		UnityAdsRequestLog.setDirectory(_directory);
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		UnityAdsRequestLog.setDirectory(null);
+
+		File[] files = _directory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				assertTrue(file.delete());
+			}
+		}
+
+		assertTrue(_directory.delete());
+		super.tearDown();
+	}
+
+	public void testRecordsTakenInOrder() throws Exception {
+		appendRecords(0, 3);
+
+		assertIds(UnityAdsRequestLog.takeAll(), 0, 3);
+		assertFalse(_logFile.exists());
+		assertEquals(0, UnityAdsRequestLog.takeAll().size());
+	}
+
+	public void testTornLastRecordDropped() throws Exception {
+		appendRecords(0, 3);
+
+		// Header and part of payload of a record that was being written when app died
+		byte[] payload = record(3).toString().getBytes("UTF-8");
+		DataOutputStream output = new DataOutputStream(new FileOutputStream(_logFile, true));
+		try {
+			output.writeInt(payload.length);
+			output.writeInt(0);
+			output.write(payload, 0, payload.length / 2);
+		} finally {
+			output.close();
+		}
+
+		// Next session doesn't append after the torn record
+		UnityAdsRequestLog.setDirectory(_directory);
+		appendRecords(4, 5);
+
+		ArrayList<JSONObject> records = UnityAdsRequestLog.takeAll();
+		assertEquals(4, records.size());
+		assertIds(new ArrayList<>(records.subList(0, 3)), 0, 3);
+		assertEquals(4, records.get(3).getInt("id"));
+	}
+
+	public void testCorruptedRecordEndsLog() throws Exception {
+		appendRecords(0, 3);
+
+		RandomAccessFile file = new RandomAccessFile(_logFile, "rw");
+		try {
+			// Change first byte of the payload of second record
+			int firstLength = file.readInt();
+			long position = 8 + firstLength + 8;
+			file.seek(position);
+			int value = file.read();
+			file.seek(position);
+			file.write(value ^ 0xff);
+		} finally {
+			file.close();
+		}
+
+		assertIds(UnityAdsRequestLog.takeAll(), 0, 1);
+	}
+
+	public void testInvalidRecordLengthEndsLog() throws Exception {
+		appendRecords(0, 2);
+		appendRaw(64 * 1024 + 1);
+		appendRecords(2, 3);
+
+		assertIds(UnityAdsRequestLog.takeAll(), 0, 2);
+	}
+
+	public void testNegativeRecordLengthEndsLog() throws Exception {
+		appendRecords(0, 2);
+		appendRaw(-1);
+
+		assertIds(UnityAdsRequestLog.takeAll(), 0, 2);
+	}
+
+	public void testCompactionDropsOldestRecords() throws Exception {
+		StringBuilder padding = new StringBuilder();
+		for(int i = 0; i < 10000; i++) {
+			padding.append('x');
+		}
+
+		int count = 100;
+		for(int i = 0; i < count; i++) {
+			UnityAdsRequestLog.append(record(i).put("padding", padding.toString()));
+		}
+
+		assertTrue(_logFile.length() <= 512 * 1024);
+
+		ArrayList<JSONObject> records = UnityAdsRequestLog.takeAll();
+		assertTrue(records.size() > 0);
+		assertTrue(records.size() < count);
+		assertIds(records, count - records.size(), count);
+	}
+
+	public void testLegacyFileTakenFirst() throws Exception {
+		JSONArray legacyRecords = new JSONArray();
+		legacyRecords.put(record(0));
+		legacyRecords.put(record(1));
+
+		File legacyFile = new File(_directory, UnityAdsConstants.PENDING_REQUESTS_FILENAME);
+		FileOutputStream output = new FileOutputStream(legacyFile);
+		try {
+			output.write(new JSONObject().put("data", legacyRecords).toString().getBytes("UTF-8"));
+		} finally {
+			output.close();
+		}
+
+		appendRecords(2, 4);
+
+		assertIds(UnityAdsRequestLog.takeAll(), 0, 4);
+		assertFalse(legacyFile.exists());
+		assertFalse(_logFile.exists());
+	}
+
+	private static JSONObject record(int id) throws Exception {
+		return new JSONObject().put("id", id).put("url", "https://example.com/events?id=" + id);
+	}
+
+	private static void appendRecords(int first, int end) throws Exception {
+		for(int id = first; id < end; id++) {
+			UnityAdsRequestLog.append(record(id));
+		}
+	}
+
+	// Appends a record header with length but no payload
+	private void appendRaw(int length) throws IOException {
+		DataOutputStream output = new DataOutputStream(new FileOutputStream(_logFile, true));
+
+		try {
+			output.writeInt(length);
+			output.writeInt(0);
+		} finally {
+			output.close();
+		}
+	}
+
+	private static void assertIds(ArrayList<JSONObject> records, int first, int end) throws Exception {
+		assertEquals(end - first, records.size());
+
+		for(int i = 0; i < records.size(); i++) {
+			assertEquals(first + i, records.get(i).getInt("id"));
+		}
+	}
+}